@@ -0,0 +1,222 @@
+package org.cis1200.checkers;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Labels large numbers of positions with their legal moves, piece counts
+ * and static evaluation.
+ * <p>
+ * Positions come in as FEN strings (see PdnReader), as masks, or as files
+ * written by Checkers.writeStateToFile, and are best passed as a parallel
+ * stream. Every worker thread keeps one Checkers and one move buffer and
+ * reuses them with setPosition, so a position costs no more than its
+ * Result.
+ * <p>
+ * Usage: {@code BatchEvaluator <positions> [output]} reads one FEN a
+ * line and writes, for each, the FEN, the evaluation, the piece counts and
+ * the legal moves, in the same order.
+ */
+public final class BatchEvaluator {
+
+    private static final ThreadLocal<Checkers> SCRATCH = ThreadLocal.withInitial(Checkers::new);
+    private static final ThreadLocal<int[]> MOVES =
+            ThreadLocal.withInitial(() -> new int[Move.MAX_MOVES]);
+
+    private static final int[] NO_MOVES = {};
+    private static final Result INVALID = new Result(0, 0, 0, true, NO_MOVES, 0, false);
+
+    private BatchEvaluator() {
+    }
+
+    /**
+     * What is known about one position. Invalid positions, which could
+     * not be read or are not legal, have no moves and a score of 0.
+     */
+    public static final class Result {
+        private final int black;
+        private final int red;
+        private final int kings;
+        private final boolean blackToMove;
+        private final int[] moves;
+        private final int score;
+        private final boolean valid;
+
+        private Result(int black, int red, int kings, boolean blackToMove, int[] moves,
+                       int score, boolean valid) {
+            this.black = black;
+            this.red = red;
+            this.kings = kings;
+            this.blackToMove = blackToMove;
+            this.moves = moves;
+            this.score = score;
+            this.valid = valid;
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        public int getBlackMask() {
+            return black;
+        }
+
+        public int getRedMask() {
+            return red;
+        }
+
+        public int getKingMask() {
+            return kings;
+        }
+
+        public boolean getCurrentPlayer() {
+            return blackToMove;
+        }
+
+        public int getNumBlack() {
+            return Integer.bitCount(black);
+        }
+
+        public int getNumWhite() {
+            return Integer.bitCount(red);
+        }
+
+        /**
+         * Returns the number of legal moves; 0 means the side to move has
+         * lost.
+         */
+        public int getMoveCount() {
+            return moves.length;
+        }
+
+        /**
+         * Returns legal move i, packed as described in Move.
+         */
+        public int getMove(int i) {
+            return moves[i];
+        }
+
+        /**
+         * Returns the Evaluator score, from the side to move's point of
+         * view.
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Returns the line written by main, such as
+         * "B:W21,22:B1,K5 -120 2 2 1-5,5-9", or "invalid".
+         */
+        @Override
+        public String toString() {
+            if (!valid) {
+                return "invalid";
+            }
+            StringBuilder sb = new StringBuilder(PdnWriter.fen(black, red, kings, blackToMove));
+            sb.append(' ').append(score).append(' ').append(getNumBlack()).append(' ')
+                    .append(getNumWhite()).append(' ');
+            for (int i = 0; i < moves.length; i++) {
+                sb.append(i == 0 ? "" : ",").append(PdnWriter.moveText(moves[i]));
+            }
+            return sb.toString();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("usage: BatchEvaluator <positions> [output]");
+            return;
+        }
+        long start = System.nanoTime();
+        AtomicLong count = new AtomicLong();
+        AtomicLong invalid = new AtomicLong();
+        try (Stream<String> lines = Files.lines(Paths.get(args[0]), StandardCharsets.US_ASCII);
+             BufferedWriter out = args.length > 1
+                     ? Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.US_ASCII)
+                     : null) {
+            evaluateFens(lines.parallel()).forEachOrdered(result -> {
+                count.incrementAndGet();
+                if (!result.isValid()) {
+                    invalid.incrementAndGet();
+                }
+                if (out != null) {
+                    try {
+                        out.write(result.toString());
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d positions (%d invalid) in %.2f s, %.0f positions/s%n",
+                count.get(), invalid.get(), seconds, count.get() / seconds);
+    }
+
+    /**
+     * Evaluates a stream of FEN strings. The result is parallel if fens
+     * is, and in the same order.
+     */
+    public static Stream<Result> evaluateFens(Stream<String> fens) {
+        return fens.map(BatchEvaluator::evaluate);
+    }
+
+    /**
+     * Evaluates a stream of files written by Checkers.writeStateToFile.
+     * The result is parallel if files is, and in the same order.
+     */
+    public static Stream<Result> evaluateFiles(Stream<Path> files) {
+        return files.map(BatchEvaluator::evaluate);
+    }
+
+    /**
+     * Evaluates the position in a FEN string.
+     */
+    public static Result evaluate(String fen) {
+        int[] p = PdnReader.fen(fen);
+        return p == null ? INVALID : evaluate(p[0], p[1], p[2], p[3] != 0);
+    }
+
+    /**
+     * Evaluates the position saved in a file by Checkers.writeStateToFile.
+     */
+    public static Result evaluate(Path stateFile) {
+        Checkers game = SCRATCH.get();
+        if (!game.readStateFromFile(stateFile.toString())) {
+            return INVALID;
+        }
+        return evaluate(game);
+    }
+
+    /**
+     * Evaluates a position given as masks, one bit per square as described
+     * in Bitboard.
+     */
+    public static Result evaluate(int black, int red, int kings, boolean blackToMove) {
+        Checkers game = SCRATCH.get();
+        try {
+            game.setPosition(black, red, kings, blackToMove);
+        } catch (IllegalArgumentException e) {
+            return INVALID;
+        }
+        return evaluate(game);
+    }
+
+    private static Result evaluate(Checkers game) {
+        int[] moves = MOVES.get();
+        int n = game.generateMoves(moves);
+        int[] legal = n == 0 ? NO_MOVES : new int[n];
+        System.arraycopy(moves, 0, legal, 0, n);
+        return new Result(game.getBlackMask(), game.getRedMask(), game.getKingMask(),
+                game.getCurrentPlayer(), legal, Evaluator.evaluate(game), true);
+    }
+}
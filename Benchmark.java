@@ -0,0 +1,187 @@
+package org.cis1200.checkers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Throughput and allocation benchmarks for the rules engine.
+ * <p>
+ * Each operation is warmed up, then run in a loop for a fixed time, and
+ * the rate and the bytes allocated per call are printed. Tracing is left
+ * off, as it is in normal play.
+ * <p>
+ * In threads mode it measures how ParallelSearch scales instead: a few
+ * fixed positions are searched to a fixed depth with 1, 2, 4, 8 and 16
+ * threads, and the time to reach the depth, the nodes per second and the
+ * speedup over one thread are printed. Speedups above the number of cores
+ * the machine has mean nothing.
+ * <p>
+ * Usage: {@code Benchmark [seconds per operation]} or
+ * {@code Benchmark threads [depth]}.
+ */
+public class Benchmark {
+
+    private static final long WARMUP_NANOS = 500_000_000L;
+    private static final int BATCH = 256;
+    private static final int SCALING_DEPTH = 16;
+    private static final int MAX_THREADS = 16;
+    private static final int[] SCALING_PLIES = {0, 10, 20}; // plies into the fixed line
+    private static final long SCALING_LIMIT_MILLIS = 3_600_000; // no limit, in effect
+
+    private static volatile long sink; // keeps results from being optimised away
+
+    private final long measureNanos;
+    private final PrintStream out;
+
+    public Benchmark(long measureNanos, PrintStream out) {
+        this.measureNanos = measureNanos;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("threads")) {
+            int depth = args.length > 1 ? Integer.parseInt(args[1]) : SCALING_DEPTH;
+            new Benchmark(0, System.out).runScaling(depth);
+            return;
+        }
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+        new Benchmark((long) (seconds * 1e9), System.out).runAll();
+    }
+
+    /**
+     * Runs every benchmark and prints one line for each.
+     */
+    public void runAll() throws IOException {
+        Checkers start = new Checkers();
+        Checkers middle = middleGame();
+        int[] buf = new int[Move.MAX_MOVES];
+
+        measure("checkCanJump", () -> middle.checkCanJump(1));
+        measure("checkAvailableMovesForPiece", () -> {
+            middle.checkAvailableMovesForPiece(1, 5, 0);
+            sink += middle.getPlayer(5, 0);
+        });
+        measure("setPieceSelected+movePiece", () -> {
+            Checkers game = new Checkers(start);
+            game.setPieceSelected(1, 5, 0);
+            game.movePiece(4, 1);
+            sink += game.getHash();
+        });
+        measure("generateMoves", () -> sink += middle.generateMoves(buf));
+        int[] moves = new int[Move.MAX_MOVES];
+        int n = middle.generateMoves(moves);
+        measure("makeMove+unmakeMove", () -> {
+            for (int i = 0; i < n; i++) {
+                middle.makeMove(moves[i]);
+                sink += middle.getHash();
+                middle.unmakeMove(moves[i]);
+            }
+        });
+
+        File file = File.createTempFile("checkers-bench", ".bin");
+        file.deleteOnExit();
+        String path = file.getPath();
+        measure("writeStateToFile", () -> middle.writeStateToFile(path));
+        Checkers loaded = new Checkers();
+        measure("readStateFromFile", () -> {
+            loaded.readStateFromFile(path);
+            sink += loaded.getHash();
+        });
+
+        Perft perft = new Perft(8);
+        long t = System.nanoTime();
+        long nodes = perft.count(new Checkers(), 8);
+        long nanos = System.nanoTime() - t;
+        out.printf("%-30s %12d nodes %12.0f nodes/s%n", "perft 8", nodes, nodes * 1e9 / nanos);
+    }
+
+    /**
+     * Searches each fixed position to depth with 1, 2, 4, 8 and 16 threads,
+     * each time starting from an empty table, and prints one line for each.
+     */
+    public void runScaling(int depth) {
+        out.println(Runtime.getRuntime().availableProcessors() + " cores");
+        scale(depth - 2, false); //warm up every thread count and position
+        scale(depth, true);
+    }
+
+    private void scale(int depth, boolean print) {
+        for (int plies : SCALING_PLIES) {
+            Checkers game = line(plies);
+            long single = 0;
+            for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+                SearchResult result;
+                try (ParallelSearch search = new ParallelSearch(threads)) {
+                    result = search.search(game, SCALING_LIMIT_MILLIS, depth);
+                }
+                long millis = Math.max(result.getElapsedMillis(), 1);
+                if (threads == 1) {
+                    single = millis;
+                }
+                if (print) {
+                    out.printf("%-30s %8d ms %12d nodes/s %6.2fx%n",
+                            "depth " + depth + ", ply " + plies + ", threads " + threads,
+                            millis, result.getNodesPerSecond(), (double) single / millis);
+                }
+            }
+        }
+    }
+
+    private void measure(String name, Runnable op) {
+        run(op, WARMUP_NANOS);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long bytesBefore = allocatedBytes(threads);
+        long start = System.nanoTime();
+        long ops = run(op, measureNanos);
+        long nanos = System.nanoTime() - start;
+        long bytes = allocatedBytes(threads) - bytesBefore;
+        out.printf("%-30s %12.0f ops/s %10.1f B/op%n", name, ops * 1e9 / nanos,
+                bytesBefore < 0 ? Double.NaN : (double) bytes / ops);
+    }
+
+    private static long run(Runnable op, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long ops = 0;
+        do {
+            for (int i = 0; i < BATCH; i++) {
+                op.run();
+            }
+            ops += BATCH;
+        } while (System.nanoTime() < end);
+        return ops;
+    }
+
+    // -1 if the JVM cannot report allocations per thread
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Plays the first few moves of a fixed line, so the benchmarks see a
+     * position with pieces of both sides in contact.
+     */
+    private static Checkers middleGame() {
+        return line(10);
+    }
+
+    // the position plies into the fixed line, or where it ends, if sooner
+    private static Checkers line(int plies) {
+        Checkers game = new Checkers();
+        int[] buf = new int[Move.MAX_MOVES];
+        for (int ply = 0; ply < plies; ply++) {
+            int n = game.generateMoves(buf);
+            if (n == 0) {
+                break;
+            }
+            game.makeMove(buf[ply % n]);
+        }
+        return game;
+    }
+}
@@ -0,0 +1,276 @@
+package org.cis1200.checkers;
+
+/**
+ * Bitboard helpers for the 32 playable (dark) squares of the board.
+ * <p>
+ * Square s is on row s / 4. Dark squares sit in the odd columns of even
+ * rows and in the even columns of odd rows, so square s has column
+ * 2 * (s % 4) + 1 - (row % 2). Bit s of an int is set when the square is
+ * occupied, which lets a whole side be moved one diagonal step with a
+ * couple of shifts and masks instead of scanning all 64 cells.
+ * <p>
+ * "Up" is towards row 0, which is the direction black men move in.
+ */
+public final class Bitboard {
+
+    /** The number of rows and columns. */
+    public static final int SIZE = 8;
+
+    public static final int UP_LEFT = 0;
+    public static final int UP_RIGHT = 1;
+    public static final int DOWN_LEFT = 2;
+    public static final int DOWN_RIGHT = 3;
+
+    public static final int EVEN_ROWS = 0x0F0F0F0F;
+    public static final int ODD_ROWS = 0xF0F0F0F0;
+    public static final int LEFT_EDGE = 0x11111111; // first dark square of each row
+    public static final int RIGHT_EDGE = 0x88888888; // last dark square of each row
+    public static final int TOP_ROW = 0x0000000F;
+    public static final int BOTTOM_ROW = 0xF0000000;
+
+    /** Black men on rows 5 to 7 and red men on rows 0 to 2. */
+    public static final int INITIAL_BLACK = 0xFFF00000;
+    public static final int INITIAL_RED = 0x00000FFF;
+
+    // NEIGHBOR[d][s] is the square one step from s in direction d, JUMP[d][s]
+    // the square two steps away; -1 when that would leave the board.
+    private static final int[][] NEIGHBOR = new int[4][32];
+    private static final int[][] JUMP = new int[4][32];
+
+    static {
+        int[] dr = {-1, -1, 1, 1};
+        int[] dc = {-1, 1, -1, 1};
+        for (int d = 0; d < 4; d++) {
+            for (int s = 0; s < 32; s++) {
+                int r = row(s);
+                int c = col(s);
+                NEIGHBOR[d][s] = square(r + dr[d], c + dc[d]);
+                JUMP[d][s] = square(r + 2 * dr[d], c + 2 * dc[d]);
+            }
+        }
+    }
+
+    private Bitboard() {
+    }
+
+    /**
+     * Returns the square index of (r, c), or -1 if it is off the board or
+     * a light square.
+     */
+    public static int square(int r, int c) {
+        if (r < 0 || r >= SIZE || c < 0 || c >= SIZE || (r + c) % 2 == 0) {
+            return -1;
+        }
+        return r * 4 + c / 2;
+    }
+
+    public static int row(int s) {
+        return s >> 2;
+    }
+
+    public static int col(int s) {
+        return 2 * (s & 3) + 1 - (row(s) & 1);
+    }
+
+    public static int neighbor(int dir, int s) {
+        return NEIGHBOR[dir][s];
+    }
+
+    public static int jump(int dir, int s) {
+        return JUMP[dir][s];
+    }
+
+    public static boolean isUp(int dir) {
+        return dir < DOWN_LEFT;
+    }
+
+    // One diagonal step for every piece in p at once. Pieces that would
+    // leave the board are shifted out of the int or masked off first.
+
+    public static int upLeft(int p) {
+        return ((p & EVEN_ROWS) >>> 4) | ((p & ODD_ROWS & ~LEFT_EDGE) >>> 5);
+    }
+
+    public static int upRight(int p) {
+        return ((p & EVEN_ROWS & ~RIGHT_EDGE) >>> 3) | ((p & ODD_ROWS) >>> 4);
+    }
+
+    public static int downLeft(int p) {
+        return ((p & EVEN_ROWS) << 4) | ((p & ODD_ROWS & ~LEFT_EDGE) << 3);
+    }
+
+    public static int downRight(int p) {
+        return ((p & EVEN_ROWS & ~RIGHT_EDGE) << 5) | ((p & ODD_ROWS) << 4);
+    }
+
+    /**
+     * Returns the pieces of the side to move that can make a plain step.
+     *
+     * @param own         pieces of the side to move
+     * @param opp         pieces of the other side
+     * @param kings       kings of both sides
+     * @param blackToMove true if own is black, whose men move up
+     */
+    public static int steppers(int own, int opp, int kings, boolean blackToMove) {
+        int empty = ~(own | opp);
+        int up = blackToMove ? own : own & kings;
+        int down = blackToMove ? own & kings : own;
+        // a piece can step up-left exactly when it is down-right of an
+        // empty square, and so on for the other directions
+        return (up & (downRight(empty) | downLeft(empty)))
+                | (down & (upRight(empty) | upLeft(empty)));
+    }
+
+    /**
+     * Returns the pieces of the side to move that have at least one jump.
+     * Arguments are as for {@link #steppers}.
+     */
+    public static int jumpers(int own, int opp, int kings, boolean blackToMove) {
+        int empty = ~(own | opp);
+        int up = blackToMove ? own : own & kings;
+        int down = blackToMove ? own & kings : own;
+        return (up & (downRight(opp & downRight(empty)) | downLeft(opp & downLeft(empty))))
+                | (down & (upRight(opp & upRight(empty)) | upLeft(opp & upLeft(empty))));
+    }
+
+    /**
+     * Returns the directions a piece may move in as a bit set indexed by
+     * direction.
+     */
+    public static int directions(boolean black, boolean king) {
+        if (king) {
+            return 0xF;
+        }
+        return black ? (1 << UP_LEFT) | (1 << UP_RIGHT) : (1 << DOWN_LEFT) | (1 << DOWN_RIGHT);
+    }
+
+    /**
+     * Writes the legal moves of the side to move into moves, starting at
+     * index n, and returns the new end of the list. Jumps are compulsory,
+     * so steps are only generated when no piece can jump. Arguments are as
+     * for {@link #steppers}.
+     */
+    public static int generateMoves(int own, int opp, int kings, boolean blackToMove,
+                                    int[] moves, int n) {
+        int empty = ~(own | opp);
+        int pieces = jumpers(own, opp, kings, blackToMove);
+        boolean jumping = pieces != 0;
+        if (!jumping) {
+            pieces = steppers(own, opp, kings, blackToMove);
+        }
+        while (pieces != 0) {
+            int s = Integer.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            int dirs = directions(blackToMove, (kings >>> s & 1) != 0);
+            if (jumping) {
+                n = addJumps(s, dirs, opp, empty, moves, n);
+            } else {
+                n = addSteps(s, dirs, empty, moves, n);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Writes the moves of the piece on square s into moves, starting at
+     * index n, and returns the new end of the list. The piece's jumps are
+     * returned if it has any and its steps otherwise, whether or not
+     * another piece of the same side can jump.
+     */
+    public static int generatePieceMoves(int s, int own, int opp, int kings, boolean blackToMove,
+                                         int[] moves, int n) {
+        int empty = ~(own | opp);
+        int dirs = directions(blackToMove, (kings >>> s & 1) != 0);
+        int end = addJumps(s, dirs, opp, empty, moves, n);
+        if (end == n) {
+            end = addSteps(s, dirs, empty, moves, n);
+        }
+        return end;
+    }
+
+    private static int addJumps(int s, int dirs, int opp, int empty, int[] moves, int n) {
+        for (int d = 0; d < 4; d++) {
+            if ((dirs >>> d & 1) != 0) {
+                long tree = jumpTree(s, d, opp, empty);
+                if (tree >= 0) {
+                    moves[n++] = Move.jump(s, (int) (tree >>> 32), d);
+                }
+            }
+        }
+        return n;
+    }
+
+    private static int addSteps(int s, int dirs, int empty, int[] moves, int n) {
+        for (int d = 0; d < 4; d++) {
+            int to = NEIGHBOR[d][s];
+            if ((dirs >>> d & 1) != 0 && to >= 0 && (empty >>> to & 1) != 0) {
+                moves[n++] = Move.step(s, to, d);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Follows every jump that starts from square from in direction dir.
+     * After the first jump the piece keeps jumping left and right in the
+     * same vertical direction, and the whole tree of jumps is captured in
+     * one move. The piece lands on the square furthest along that
+     * direction, taking the first one found when several are equally far.
+     *
+     * @return the captured squares in the low 32 bits and the landing square
+     * in the high bits, or -1 if there is no jump in that direction
+     */
+    public static long jumpTree(int from, int dir, int opp, int empty) {
+        int over = NEIGHBOR[dir][from];
+        int to = JUMP[dir][from];
+        if (to < 0 || (opp >>> over & 1) == 0 || (empty >>> to & 1) == 0) {
+            return -1;
+        }
+        return walk(to, isUp(dir), opp, empty) | 1L << over;
+    }
+
+    /**
+     * Returns every square the piece passes through in the jump tree of
+     * {@link #jumpTree}, or 0 if there is no jump in that direction.
+     */
+    public static int jumpPath(int from, int dir, int opp, int empty) {
+        int over = NEIGHBOR[dir][from];
+        int to = JUMP[dir][from];
+        if (to < 0 || (opp >>> over & 1) == 0 || (empty >>> to & 1) == 0) {
+            return 0;
+        }
+        return path(to, isUp(dir), opp, empty);
+    }
+
+    private static long walk(int s, boolean up, int opp, int empty) {
+        int captured = 0;
+        int landing = s;
+        int right = up ? UP_RIGHT : DOWN_RIGHT;
+        for (int d = right; d >= right - 1; d--) { //right first, then left
+            int over = NEIGHBOR[d][s];
+            int to = JUMP[d][s];
+            if (to >= 0 && (opp >>> over & 1) != 0 && (empty >>> to & 1) != 0) {
+                long sub = walk(to, up, opp, empty);
+                captured |= (int) sub | 1 << over;
+                int l = (int) (sub >>> 32);
+                if (up ? row(l) < row(landing) : row(l) > row(landing)) {
+                    landing = l;
+                }
+            }
+        }
+        return (long) landing << 32 | (captured & 0xFFFFFFFFL);
+    }
+
+    private static int path(int s, boolean up, int opp, int empty) {
+        int squares = 1 << s;
+        int right = up ? UP_RIGHT : DOWN_RIGHT;
+        for (int d = right; d >= right - 1; d--) {
+            int over = NEIGHBOR[d][s];
+            int to = JUMP[d][s];
+            if (to >= 0 && (opp >>> over & 1) != 0 && (empty >>> to & 1) != 0) {
+                squares |= path(to, up, opp, empty);
+            }
+        }
+        return squares;
+    }
+}
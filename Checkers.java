@@ -7,7 +7,16 @@ package org.cis1200.checkers;
  */
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.zip.CRC32;
 
 /**
  * This class is a model for Checkers.
@@ -28,22 +37,47 @@ import java.util.*;
  */
 public class Checkers {
 
-    private int[][] board;
+    /** Where the game is saved by default. */
+    public static final String STATE_FILE = "state.bin";
+
+    // a save is 22 bytes, big-endian: this magic number, a version byte, a
+    // flags byte (1 = black to move, 2 = game over), the black, red and
+    // kings masks, and a CRC-32 of everything before it
+    private static final int SAVE_MAGIC = 0x434B5356; // "CKSV"
+    private static final byte SAVE_VERSION = 1;
+    private static final int SAVE_BYTES = 22;
+
+    // one bit per playable square, see Bitboard for the layout
+    private int black;
+    private int red;
+    private int kings;
+    private long hash; // Zobrist key, kept up to date on every change
     private boolean blackPlayer;
     private boolean gameOver;
     private int[] pieceSelected = null;
     private int numBlack;
     private int numWhite;
-    private Map<String, List<Integer>> rightUpJumpsPossible;
-    private Map<String, List<Integer>> rightDownJumpsPossible;
-    private Map<String, List<Integer>> leftUpJumpsPossible;
-    private Map<String, List<Integer>> leftDownJumpsPossible;
 
-    private List<List<Integer>> stepsPossible;
-    private int numLeftJumps;
-    private int numRightJumps;
+    // legal moves of the side to move, packed as described in Move
+    private final int[] moves = new int[Move.MAX_MOVES];
+    private int numMoves;
+
+    // squares the selected piece can be moved to, and the move that each
+    // of those squares stands for
+    private int targets;
+    private final int[] targetMoves = new int[32];
+    private final int[] pieceMoves = new int[4];
 
     private List<List<Integer>> piecesMovable;
+    private boolean piecesMovableStale;
+
+    // one entry per makeMove that has not been unmade yet: the kings mask
+    // before the move in the high half and the captured squares in the low
+    private long[] undo = new long[64];
+    private long[] undoHash = new long[64];
+    private int undoSize;
+
+    private GameListener listener; // told about the turns of the game
 
 
     /**
@@ -54,73 +88,205 @@ public class Checkers {
     }
 
     /**
-     * playTurn allows players to play a turn. Returns true if the move is
-     * successful and false if a player tries to play in a location that is
-     * taken or after the game has ended. If the turn is successful and the game
-     * has not ended, the player is changed. If the turn is unsuccessful or the
-     * game has ended, the player is not changed.
+     * Copy constructor. The copy shares nothing with other, so each search
+     * thread can work on its own copy of a game. The selected piece and
+     * the undo history are not copied.
+     */
+    public Checkers(Checkers other) {
+        black = other.black;
+        red = other.red;
+        kings = other.kings;
+        hash = other.hash;
+        blackPlayer = other.blackPlayer;
+        gameOver = other.gameOver;
+        numBlack = other.numBlack;
+        numWhite = other.numWhite;
+        piecesMovable = new ArrayList<>();
+        piecesMovableStale = true;
+    }
+
+    /**
+     * Writes the game to STATE_FILE. See writeStateToFile(String).
+     *
+     * @return whether the game was saved
+     */
+    public boolean writeStateToFile() {
+        return writeStateToFile(STATE_FILE);
+    }
+
+    /**
+     * Saves the game in the binary format described at SAVE_MAGIC. The
+     * bytes go to a temporary file first, which is then renamed over
+     * filePath, so a failed save leaves the previous save intact.
      *
-     * @return whether the turn was successful
+     * @return whether the game was saved
      */
-    public void writeStateToFile() {
-        String filePath = "state.txt";
-        File myObj = new File(filePath);
-        BufferedWriter bw;
+    public boolean writeStateToFile(String filePath) {
+        ByteBuffer buf = ByteBuffer.allocate(SAVE_BYTES);
+        buf.putInt(SAVE_MAGIC).put(SAVE_VERSION)
+                .put((byte) ((blackPlayer ? 1 : 0) | (gameOver ? 2 : 0)))
+                .putInt(black).putInt(red).putInt(kings);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, SAVE_BYTES - 4);
+        buf.putInt((int) crc.getValue()).flip();
+
+        Path target = Paths.get(filePath);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
         try {
-            bw = new BufferedWriter(new FileWriter(myObj, false));
-            for (int[] row : board) { //write board
-                for (int player : row) {
-                    bw.write(player + "");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
                 }
-                bw.write("\n");
+                //the rename must not reach the disk before the bytes do
+                channel.force(true);
             }
-            bw.write(blackPlayer + "\n");
-            bw.write(gameOver + "\n");
-            bw.write(numBlack + "\n");
-            bw.write(numWhite + "\n");
-            bw.close();
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            return true;
         } catch (IOException e) {
-            System.out.println("IOException caught");
+            Trace.record(Trace.ERROR, Trace.SAVE_FAILED, 0, 0);
+            return false;
         }
     }
 
-    public void readStateFromFile(String filePath) {
-        BufferedReader br = null;
+    /**
+     * Loads a game saved by writeStateToFile, or by older versions in the
+     * text format (eight rows of piece codes, then the side to move and
+     * whether the game is over). The piece counts are always derived from
+     * the board. If the file is missing, unreadable or not a valid
+     * position, the game is left unchanged.
+     *
+     * @return whether the game was loaded
+     */
+    public boolean readStateFromFile(String filePath) {
+        if (filePath == null) {
+            throw new IllegalArgumentException();
+        }
+        byte[] data;
         try {
-            if (filePath == null) {
-                throw new IllegalArgumentException();
-            }
-            File f = new File(filePath);
-            if (!f.exists()) {
-                throw new IllegalArgumentException();
-            }
-            br = new BufferedReader(new FileReader(filePath));
+            data = Files.readAllBytes(Paths.get(filePath));
         } catch (IOException e) {
-            System.out.print("IOException caught");
+            Trace.record(Trace.ERROR, Trace.LOAD_FAILED, 0, 0);
+            return false;
         }
-        try {
-            for (int i = 0; i < 8; i++) { //read the board
-                String str = br.readLine();
-                for (int j = 0; j < 8; j++) {
-                    board[i][j] = Character.getNumericValue(str.charAt(j));
+        boolean loaded = data.length == SAVE_BYTES && ByteBuffer.wrap(data).getInt() == SAVE_MAGIC
+                ? readBinaryState(data)
+                : readTextState(data);
+        if (!loaded) {
+            Trace.record(Trace.ERROR, Trace.LOAD_FAILED, 0, 0);
+        }
+        return loaded;
+    }
+
+    private boolean readBinaryState(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        buf.getInt(); // magic, already checked
+        int version = buf.get();
+        int flags = buf.get();
+        int b = buf.getInt();
+        int r = buf.getInt();
+        int k = buf.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, SAVE_BYTES - 4);
+        if (version != SAVE_VERSION || (flags & ~3) != 0 || buf.getInt() != (int) crc.getValue()
+                || !isValidPosition(b, r, k)) {
+            return false;
+        }
+        setPosition(b, r, k, (flags & 1) != 0, (flags & 2) != 0);
+        return true;
+    }
+
+    private boolean readTextState(byte[] data) {
+        String[] lines = new String(data, StandardCharsets.US_ASCII).split("\n");
+        if (lines.length < Bitboard.SIZE + 2) {
+            return false;
+        }
+        int b = 0;
+        int r = 0;
+        int k = 0;
+        for (int i = 0; i < Bitboard.SIZE; i++) { //read the board
+            if (lines[i].length() < Bitboard.SIZE) {
+                return false;
+            }
+            for (int j = 0; j < Bitboard.SIZE; j++) {
+                int player = Character.getNumericValue(lines[i].charAt(j));
+                if (player == 0) {
+                    continue;
+                }
+                int s = Bitboard.square(i, j);
+                if (s < 0 || player < 0 || player > 4) {
+                    return false;
+                }
+                if (player == 1 || player == 3) {
+                    b |= 1 << s;
+                } else {
+                    r |= 1 << s;
+                }
+                if (player >= 3) {
+                    k |= 1 << s;
                 }
             }
-            blackPlayer = br.readLine().equals("true");
-            gameOver = br.readLine().equals("true");
-            numBlack = Integer.valueOf(br.readLine());
-            numWhite = Integer.valueOf(br.readLine());
-        } catch (IOException e) {
-            System.out.println("IOException caught");
         }
-        numLeftJumps = 0;
-        numRightJumps = 0;
-        piecesMovable = new ArrayList<>();
-        pieceSelected = null;
-        if (blackPlayer) {
-            checkCanJump(1);
-        } else {
-            checkCanJump(2);
+        if (!isValidPosition(b, r, k)) {
+            return false;
         }
+        setPosition(b, r, k, lines[Bitboard.SIZE].trim().equals("true"),
+                lines[Bitboard.SIZE + 1].trim().equals("true"));
+        return true;
+    }
+
+    /**
+     * Checks that no square holds two pieces, every king is on a piece and
+     * no man stands on the row where it would have been crowned.
+     */
+    private static boolean isValidPosition(int blackMask, int redMask, int kingMask) {
+        return (blackMask & redMask) == 0
+                && (kingMask & ~(blackMask | redMask)) == 0
+                && (blackMask & ~kingMask & Bitboard.TOP_ROW) == 0
+                && (redMask & ~kingMask & Bitboard.BOTTOM_ROW) == 0;
+    }
+
+    /**
+     * Replaces the position with the given pieces, one bit per square as
+     * described in Bitboard. The piece counts and the Zobrist key are
+     * derived from the masks, and the game is not over.
+     *
+     * @throws IllegalArgumentException if a square holds both colours or a
+     *                                  king mask bit has no piece under it
+     */
+    public void setPosition(int blackMask, int redMask, int kingMask, boolean blackToMove) {
+        setPosition(blackMask, redMask, kingMask, blackToMove, false);
+    }
+
+    // sets whether the game is over too, before the listener hears of it
+    private void setPosition(int blackMask, int redMask, int kingMask, boolean blackToMove,
+                             boolean over) {
+        if ((blackMask & redMask) != 0 || (kingMask & ~(blackMask | redMask)) != 0) {
+            throw new IllegalArgumentException();
+        }
+        black = blackMask;
+        red = redMask;
+        kings = kingMask;
+        blackPlayer = blackToMove;
+        gameOver = over;
+        numBlack = Integer.bitCount(black);
+        numWhite = Integer.bitCount(red);
+        hash = Zobrist.hash(black, red, kings, blackPlayer);
+        undoSize = 0;
+        clearSelection();
+        if (listener != null) {
+            listener.positionChanged(this);
+        }
+    }
+
+    /**
+     * Sets the listener told about moves played with movePiece or playMove
+     * and about reset and setPosition, or removes it if listener is null.
+     * Copies of the game do not share it.
+     */
+    public void setGameListener(GameListener listener) {
+        this.listener = listener;
     }
 
     public void setNumBlack(int black) { //for testing
@@ -128,7 +294,27 @@ public class Checkers {
     }
 
     public void setPlayer(int r, int c, int player) { //for testing
-        board[r][c] = player;
+        int s = Bitboard.square(r, c);
+        if (s < 0) {
+            if (player != 0) {
+                throw new IllegalArgumentException();
+            }
+            return;
+        }
+        int old = pieceAt(s);
+        int bit = 1 << s;
+        black &= ~bit;
+        red &= ~bit;
+        kings &= ~bit;
+        if (player == 1 || player == 3) {
+            black |= bit;
+        } else if (player == 2 || player == 4) {
+            red |= bit;
+        }
+        if (player == 3 || player == 4) {
+            kings |= bit;
+        }
+        hash ^= Zobrist.piece(old, s) ^ Zobrist.piece(pieceAt(s), s);
     }
 
     public void setNumWhite(int white) { //for testing
@@ -152,9 +338,9 @@ public class Checkers {
      * for debugging.
      */
     public void printGameState() {
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                System.out.print(board[i][j]);
+        for (int i = 0; i < Bitboard.SIZE; i++) {
+            for (int j = 0; j < Bitboard.SIZE; j++) {
+                System.out.print(getPlayer(i, j));
                 if (j < 2) {
                     System.out.print(" | ");
                 }
@@ -169,31 +355,23 @@ public class Checkers {
      * reset (re-)sets the game state to start a new game.
      */
     public void reset() {
-        board = new int[8][8];
-
-        for (int i = 1; i < 8; i += 2) {
-            board[5][i - 1] = 1;
-            board[6][i] = 1;
-            board[7][i - 1] = 1;
-            board[0][i] = 2;
-            board[1][i - 1] = 2;
-            board[2][i] = 2;
-        }
+        black = Bitboard.INITIAL_BLACK;
+        red = Bitboard.INITIAL_RED;
+        kings = 0;
 
         blackPlayer = true;
         gameOver = false;
         numBlack = 12;
         numWhite = 12;
-        rightUpJumpsPossible = new HashMap<>();
-        rightDownJumpsPossible = new HashMap<>();
-        leftUpJumpsPossible = new HashMap<>();
-        leftDownJumpsPossible = new HashMap<>();
-        numLeftJumps = 0;
-        numRightJumps = 0;
-        piecesMovable = new ArrayList<>();
+        hash = Zobrist.hash(black, red, kings, blackPlayer);
+        piecesMovableStale = false;
+        undoSize = 0;
         pieceSelected = null;
+        targets = 0;
         checkCanJump(1);
-        stepsPossible = new ArrayList<>();
+        if (listener != null) {
+            listener.positionChanged(this);
+        }
     }
 
     /**
@@ -208,69 +386,208 @@ public class Checkers {
     }
 
     public List<List<Integer>> getPiecesMovable() {
+        if (piecesMovableStale) {
+            piecesMovableStale = false;
+            if (blackPlayer) {
+                checkCanJump(1);
+            } else {
+                checkCanJump(2);
+            }
+        }
         return piecesMovable;
     }
 
     public int getPlayer(int r, int c) {
-        if (r >= 0 && r < 8 && c >= 0 && c < 8) {
-            return board[r][c];
+        if (r >= 0 && r < Bitboard.SIZE && c >= 0 && c < Bitboard.SIZE) {
+            int s = Bitboard.square(r, c);
+            return s < 0 ? 0 : pieceAt(s);
         }
         return -1;
     }
 
+    private int pieceAt(int s) {
+        int king = (kings >>> s & 1) * 2;
+        if ((black >>> s & 1) != 0) {
+            return 1 + king;
+        } else if ((red >>> s & 1) != 0) {
+            return 2 + king;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the Zobrist key of the current position, which always equals
+     * Zobrist.hash of the position's masks and side to move.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    public int getBlackMask() {
+        return black;
+    }
+
+    public int getRedMask() {
+        return red;
+    }
+
+    public int getKingMask() {
+        return kings;
+    }
+
     public int[] getPieceSelected() {
         return pieceSelected;
     }
 
-    public void printMap(Map<String, List<Integer>> m) {
-        for (Map.Entry<String, List<Integer>> el : m.entrySet()) {
-            System.out.println("(" + el.getValue().get(0) + ", " + el.getValue().get(1) + ") ");
+    /**
+     * Returns the squares of the pieces that can move, one bit per square
+     * as described in Bitboard.
+     */
+    public int getMovableMask() {
+        getPiecesMovable(); //brings the move list up to date
+        int movable = 0;
+        for (int i = 0; i < numMoves; i++) {
+            movable |= 1 << Move.from(moves[i]);
         }
+        return movable;
+    }
+
+    /**
+     * Returns the squares the selected piece can be moved to, one bit per
+     * square.
+     */
+    public int getTargetMask() {
+        return targets;
     }
 
     public void checkCanJump(int player) {
-        Checkers alias = this;
-        int num = alias.getPlayer(0,0);
-        System.out.println(num);
-        boolean canJump = false;
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] == player || board[i][j] == player + 2) {
-                    checkAvailableMovesForPiece(board[i][j], i, j);
-                    if (!leftUpJumpsPossible.isEmpty() || !leftDownJumpsPossible.isEmpty() ||
-                            !rightDownJumpsPossible.isEmpty() || !rightUpJumpsPossible.isEmpty()) {
-                        canJump = true;
-                        List<Integer> l = new ArrayList<>();
-                        l.add(i);
-                        l.add(j);
-                        piecesMovable.add(l);
-                    }
-                }
-            }
+        piecesMovable = new ArrayList<>();
+        boolean isBlack = player == 1;
+        int own = isBlack ? black : red;
+        int opp = isBlack ? red : black;
+        numMoves = Bitboard.generateMoves(own, opp, kings, isBlack, moves, 0);
+        if (Trace.isEnabled(Trace.DEBUG)) {
+            Trace.record(Trace.DEBUG, Trace.MOVES_GENERATED, player, numMoves);
         }
-        if (!canJump) {
-            for (int i = 0; i < 8; i++) {
-                for (int j = 0; j < 8; j++) {
-                    if (board[i][j] == player || board[i][j] == player + 2) {
-                        stepsPossible = new ArrayList<>();
-                        if (board[i][j] == 1 || board[i][j] == 2) {
-                            getAvailableSteps(player, i, j);
-                        } else {
-                            getKingAvailableSteps(i, j);
-                        }
-
-                        if (!stepsPossible.isEmpty()) {
-                            List<Integer> l = new ArrayList<>();
-                            l.add(i);
-                            l.add(j);
-                            piecesMovable.add(l);
-                        }
-                    }
-                }
-            }
+        int movable = 0;
+        for (int i = 0; i < numMoves; i++) {
+            movable |= 1 << Move.from(moves[i]);
+        }
+        while (movable != 0) {
+            int s = Integer.numberOfTrailingZeros(movable);
+            movable &= movable - 1;
+            List<Integer> l = new ArrayList<>();
+            l.add(Bitboard.row(s));
+            l.add(Bitboard.col(s));
+            piecesMovable.add(l);
+        }
+    }
+
+    /**
+     * Writes the legal moves of the side to move into buf and returns how
+     * many there are. Nothing is allocated, so this is the call to use when
+     * searching; buf needs room for {@link Move#MAX_MOVES} moves.
+     */
+    public int generateMoves(int[] buf) {
+        int own = blackPlayer ? black : red;
+        int opp = blackPlayer ? red : black;
+        return Bitboard.generateMoves(own, opp, kings, blackPlayer, buf, 0);
+    }
+
+    /**
+     * Plays move as a turn of the game, the way movePiece does for a move
+     * picked with the mouse: like makeMove, but the game listener is told.
+     */
+    public void playMove(int move) {
+        makeMove(move);
+        if (Trace.isEnabled(Trace.INFO)) {
+            Trace.record(Trace.INFO, Trace.MOVE_PLAYED, move, (long) numBlack << 32 | numWhite);
+        }
+        if (listener != null) {
+            listener.moved(this, move);
         }
     }
 
+    /**
+     * Plays move, which must be a legal move of the side to move, and
+     * passes the turn. Unlike movePiece this does not rebuild the list of
+     * movable pieces, and it can be taken back with unmakeMove, so a search
+     * can walk the game tree on a single instance.
+     */
+    public void makeMove(int move) {
+        int from = 1 << Move.from(move);
+        int to = 1 << Move.to(move);
+        int captured = 0;
+        if (Move.isJump(move)) {
+            int own = blackPlayer ? black : red;
+            int opp = blackPlayer ? red : black;
+            captured = (int) Bitboard.jumpTree(Move.from(move), Move.direction(move),
+                    opp, ~(own | opp));
+        }
+        if (undoSize == undo.length) {
+            undo = Arrays.copyOf(undo, undoSize * 2);
+            undoHash = Arrays.copyOf(undoHash, undoSize * 2);
+        }
+        undoHash[undoSize] = hash;
+        undo[undoSize++] = (long) kings << 32 | (captured & 0xFFFFFFFFL);
+
+        int piece = pieceAt(Move.from(move));
+        hash ^= Zobrist.piece(piece, Move.from(move)) ^ Zobrist.side();
+        for (int b = captured; b != 0; b &= b - 1) {
+            int s = Integer.numberOfTrailingZeros(b);
+            hash ^= Zobrist.piece(pieceAt(s), s);
+        }
+        if ((kings & from) != 0) {
+            kings ^= from | to;
+        }
+        kings &= ~captured;
+        if (blackPlayer) {
+            black ^= from | to;
+            red &= ~captured;
+            numWhite -= Integer.bitCount(captured);
+            kings |= to & Bitboard.TOP_ROW;
+        } else {
+            red ^= from | to;
+            black &= ~captured;
+            numBlack -= Integer.bitCount(captured);
+            kings |= to & Bitboard.BOTTOM_ROW;
+        }
+        hash ^= Zobrist.piece(pieceAt(Move.to(move)), Move.to(move));
+        blackPlayer = !blackPlayer;
+        clearSelection();
+    }
+
+    /**
+     * Takes back move, which must be the last move played with makeMove
+     * that has not been unmade yet. Captured pieces, kings, piece counts and
+     * the side to move are restored exactly.
+     */
+    public void unmakeMove(int move) {
+        long entry = undo[--undoSize];
+        hash = undoHash[undoSize];
+        int captured = (int) entry;
+        int from = 1 << Move.from(move);
+        int to = 1 << Move.to(move);
+        blackPlayer = !blackPlayer;
+        kings = (int) (entry >>> 32);
+        if (blackPlayer) {
+            black ^= from | to;
+            red |= captured;
+            numWhite += Integer.bitCount(captured);
+        } else {
+            red ^= from | to;
+            black |= captured;
+            numBlack += Integer.bitCount(captured);
+        }
+        clearSelection();
+    }
+
+    private void clearSelection() {
+        pieceSelected = null;
+        targets = 0;
+        piecesMovableStale = true;
+    }
+
     public void setGameOver() { //for testing
         gameOver = true;
     }
@@ -282,22 +599,9 @@ public class Checkers {
         int[] arr = {player, r, c};
         pieceSelected = arr;
         checkAvailableMovesForPiece(player, r, c);
-        System.out.print("stepsPossible: ");
-        for (List<Integer> l : stepsPossible) {
-            for (Integer i : l) {
-                System.out.print(i + " ");
-            }
-            System.out.print(", ");
+        if (Trace.isEnabled(Trace.DEBUG)) {
+            Trace.record(Trace.DEBUG, Trace.PIECE_SELECTED, Bitboard.square(r, c), targets);
         }
-        System.out.println();
-        System.out.println("left down jumps possible: ");
-        printMap(leftDownJumpsPossible);
-        System.out.println("left up jumps possible: ");
-        printMap(leftUpJumpsPossible);
-        System.out.println("right up jumps possible: ");
-        printMap(rightUpJumpsPossible);
-        System.out.println("right down jumps possible: ");
-        printMap(rightDownJumpsPossible);
     }
 
     /**
@@ -318,145 +622,75 @@ public class Checkers {
         System.out.println("Winner is: " + t.checkWinner());
     }
 
-    public void capture(int r, int c, String move, Map<String, List<Integer>> map) {
-        for (Map.Entry<String, List<Integer>> mapElement : map.entrySet()) {
-            String key = mapElement.getKey();
-            int row = mapElement.getValue().get(0);
-            int col = mapElement.getValue().get(1);
-            if ((move.contains("U") && key.contains("U"))
-                    || (move.contains("D") && key.contains("D"))) {
-                if (key.contains("DL")) {
-                    board[row - 1][col + 1] = 0;
-                } else if (key.contains("DR")) {
-                    board[row - 1][col - 1] = 0;
-                } else if (key.contains("UR")) {
-                    board[row + 1][col - 1] = 0;
-                } else if (key.contains("UL")) {
-                    board[row + 1][col + 1] = 0;
-                }
-                if (pieceSelected[0] == 1 || pieceSelected[0] == 3) {
-                    numWhite--;
-                } else {
-                    numBlack--;
-                }
-            }
-        }
-    }
-
-    public void capturePieces(int r, int c) {
-        String move = "";
-        //capture all the pieces on the way to the new location  of (r,c)
-
-        if (gameOver) {
+    /**
+     * Removes every piece captured by move, which must be a legal move of
+     * the side to move.
+     */
+    public void capture(int move) {
+        if (!Move.isJump(move)) {
             return;
         }
-
-        List<Integer> coordinates = new ArrayList<>();
-        coordinates.add(r);
-        coordinates.add(c);
-        Map<String, List<Integer>> map;
-        if (leftUpJumpsPossible.containsValue(coordinates)) {
-            map = leftUpJumpsPossible;
-        } else if (leftDownJumpsPossible.containsValue(coordinates)) {
-            map = leftDownJumpsPossible;
-        } else if (rightUpJumpsPossible.containsValue(coordinates)) {
-            map = rightUpJumpsPossible;
-        } else if (rightDownJumpsPossible.containsValue(coordinates)) {
-            map = rightDownJumpsPossible;
-        } else {
-            return;
+        int own = blackPlayer ? black : red;
+        int opp = blackPlayer ? red : black;
+        int captured = (int) Bitboard.jumpTree(Move.from(move), Move.direction(move),
+                opp, ~(own | opp));
+        for (int b = captured; b != 0; b &= b - 1) {
+            int s = Integer.numberOfTrailingZeros(b);
+            hash ^= Zobrist.piece(pieceAt(s), s);
         }
-        for (Map.Entry<String, List<Integer>> el : map.entrySet()) {
-            if (el.getValue().equals(coordinates)) {
-                move = el.getKey(); // "DL", "UL", etc. + #
-                System.out.println("move: " + move);
-            }
+        if (Trace.isEnabled(Trace.DEBUG)) {
+            Trace.record(Trace.DEBUG, Trace.CAPTURE, move, captured);
+        }
+        black &= ~captured;
+        red &= ~captured;
+        kings &= ~captured;
+        if (blackPlayer) {
+            numWhite -= Integer.bitCount(captured);
+        } else {
+            numBlack -= Integer.bitCount(captured);
         }
-        capture(r, c, move, map);
     }
 
     public boolean isAvailableMove(List<Integer> l) {
-        return leftDownJumpsPossible.containsValue(l)
-                || rightDownJumpsPossible.containsValue(l) ||
-                leftUpJumpsPossible.containsValue(l) ||
-                rightUpJumpsPossible.containsValue(l) || stepsPossible.contains(l);
-    }
-
-    public List<Integer> findLastJump(Map<String, List<Integer>> m, boolean up) {
-        //if down, then the last jump is the int list with largest row
-        //if up, the last jump is the int list with smallest row
-
-        int min = 8;
-        int max = -1;
-        int[] ans = new int[2];
-
-        for (Map.Entry<String, List<Integer>> el : m.entrySet()) {
-            int row = el.getValue().get(0);
-            if (row < min) {
-                min = row;
-                if (up) {
-                    ans[0] = row;
-                    ans[1] = el.getValue().get(1);
-                }
-            }
-            if (row > max) {
-                max = row;
-                if (!up) {
-                    ans[0] = row;
-                    ans[1] = el.getValue().get(1);
-                }
-            }
-        }
-        List<Integer> lAns = new ArrayList<>();
-        lAns.add(ans[0]);
-        lAns.add(ans[1]);
-        return lAns;
+        int s = Bitboard.square(l.get(0), l.get(1));
+        return s >= 0 && (targets >>> s & 1) != 0;
     }
 
     public void movePiece(int r, int c) { //moves the piece to the new location.
         if (gameOver) {
             return;
         }
-        capturePieces(r, c);
-        List<Integer> l = new ArrayList<>();
-        l.add(r);
-        l.add(c);
-        if (isAvailableMove(l)) {
-            board[pieceSelected[1]][pieceSelected[2]] = 0;
-
-            //find the last jump for double jumps
-            int i = r;
-            int j = c;
-            if (leftUpJumpsPossible.containsValue(l)) {
-                i = findLastJump(leftUpJumpsPossible, true).get(0);
-                j = findLastJump(leftUpJumpsPossible, true).get(1);
-            } else if (rightUpJumpsPossible.containsValue(l)) {
-                i = findLastJump(rightUpJumpsPossible, true).get(0);
-                j = findLastJump(rightUpJumpsPossible, true).get(1);
-            } else if (leftDownJumpsPossible.containsValue(l)) {
-                i = findLastJump(leftDownJumpsPossible, false).get(0);
-                j = findLastJump(leftDownJumpsPossible, false).get(1);
-            } else if (rightDownJumpsPossible.containsValue(l)) {
-                i = findLastJump(rightDownJumpsPossible, false).get(0);
-                j = findLastJump(rightDownJumpsPossible, false).get(1);
-            }
-            board[i][j] = pieceSelected[0];
-
-            if (blackPlayer && r == 0) {
-                makeKing(r, c);
-            } else if (!blackPlayer && r == 7) {
-                makeKing(r, c);
+        int s = Bitboard.square(r, c);
+        if (s >= 0 && (targets >>> s & 1) != 0) {
+            int move = targetMoves[s];
+            capture(move);
+
+            //a jump always ends on the last square of its jump tree
+            int from = Move.from(move);
+            int to = Move.to(move);
+            setPlayer(Bitboard.row(to), Bitboard.col(to), pieceSelected[0]);
+            setPlayer(Bitboard.row(from), Bitboard.col(from), 0);
+
+            if (blackPlayer && Bitboard.row(to) == 0) {
+                makeKing(Bitboard.row(to), Bitboard.col(to));
+            } else if (!blackPlayer && Bitboard.row(to) == Bitboard.SIZE - 1) {
+                makeKing(Bitboard.row(to), Bitboard.col(to));
             }
             resetVars();
+            if (Trace.isEnabled(Trace.INFO)) {
+                Trace.record(Trace.INFO, Trace.MOVE_PLAYED, move, (long) numBlack << 32 | numWhite);
+            }
+            if (listener != null) {
+                listener.moved(this, move);
+            }
         }
-        System.out.println("numBlack " + numBlack + " numWhite " + numWhite);
     }
 
     public void makeKing(int r, int c) {
-        if (r == 7) {
-            board[r][c] = 4;
+        if (r == Bitboard.SIZE - 1) {
+            setPlayer(r, c, 4);
         } else if (r == 0) {
-            board[r][c] = 3;
+            setPlayer(r, c, 3);
         }
     }
 
@@ -471,15 +705,10 @@ public class Checkers {
     public void resetVars() {
         //change to other player's turn
         blackPlayer = !blackPlayer;
+        hash ^= Zobrist.side();
         pieceSelected = null;
-        leftUpJumpsPossible = new HashMap<>();
-        leftDownJumpsPossible = new HashMap<>();
-        rightUpJumpsPossible = new HashMap<>();
-        rightDownJumpsPossible = new HashMap<>();
-        numLeftJumps = 0;
-        numRightJumps = 0;
-        piecesMovable = new ArrayList<>();
-        stepsPossible = new ArrayList<>();
+        targets = 0;
+        piecesMovableStale = false;
 
         //check pieces movable
         if (blackPlayer) {
@@ -500,169 +729,26 @@ public class Checkers {
         }
     }
 
-    public Map<String, List<Integer>> checkLeftDownJumps(
-            int player, int r, int c, Map<String, List<Integer>> ans) {
-        if (player != 1) { //player can jump down
-            if (r + 2 < 8) {
-                if (c - 2 >= 0) {
-                    int playerToEat = board[r + 1][c - 1];
-                    if (checkDifferentColor(player, playerToEat)) {
-                        if (board[r + 2][c - 2] == 0) {
-                            //available jump down left
-                            System.out.println("Reached available jump down left");
-                            numLeftJumps++;
-                            List<Integer> l = new ArrayList<>();
-                            l.add(r + 2);
-                            l.add(c - 2);
-                            ans.put("DL" + numLeftJumps, l);
-                            checkRightDownJumps(player, r + 2, c - 2, ans);
-                            checkLeftDownJumps(player, r + 2, c - 2, ans);
-                        }
-                    }
-                }
-            }
-        }
-        return ans;
-    }
-
-
-    public Map<String, List<Integer>> checkRightDownJumps(
-            int player, int r, int c, Map<String, List<Integer>> ans) {
-        if (player != 1) {
-            if (r + 2 < 8) {
-                if (c + 2 < 8) {
-                    int playerToEat = board[r + 1][c + 1];
-                    if (checkDifferentColor(player, playerToEat)) {
-                        if (board[r + 2][c + 2] == 0) {
-                            //available jump right down
-                            System.out.println("Reached available jump right down");
-                            numRightJumps++;
-                            List<Integer> l = new ArrayList<>();
-                            l.add(r + 2);
-                            l.add(c + 2);
-                            ans.put("DR" + numRightJumps, l);
-                            checkRightDownJumps(player, r + 2, c + 2, ans);
-                            checkLeftDownJumps(player, r + 2, c + 2, ans);
-                        }
-                    }
-                }
-            }
-        }
-        return ans;
-    }
-
-    public Map<String, List<Integer>> checkRightUpJumps(
-            int player, int r, int c, Map<String, List<Integer>> ans) {
-        if (player != 2) {
-            if (r - 2 >= 0) {
-                if (c + 2 < 8) {
-                    int playerToEat = board[r - 1][c + 1];
-                    if (checkDifferentColor(player, playerToEat)) {
-                        if (board[r - 2][c + 2] == 0) {
-                            //available jump right  up
-                            System.out.println("Reached available jump right up");
-                            numRightJumps++;
-                            List<Integer> l = new ArrayList<>();
-                            l.add(r - 2);
-                            l.add(c + 2);
-                            ans.put("UR" + numRightJumps, l);
-                            checkRightUpJumps(player, r - 2, c + 2, ans);
-                            checkLeftUpJumps(player, r - 2, c + 2, ans);
-                        }
-                    }
-                }
-            }
-        }
-
-        return ans;
-    }
-
-    public Map<String, List<Integer>> checkLeftUpJumps(
-            int player, int r, int c, Map<String, List<Integer>> ans) {
-        if (player != 2) { //can jump up
-            if (r - 2 >= 0) {
-                if (c - 2 >= 0) {
-                    int playerToEat = board[r - 1][c - 1];
-                    if (checkDifferentColor(player, playerToEat)) {
-                        if (board[r - 2][c - 2] == 0) {
-                            //available jump up left
-                            System.out.println("Reached available jump up left");
-                            numLeftJumps++;
-                            List<Integer> l = new ArrayList<>();
-                            l.add(r - 2);
-                            l.add(c - 2);
-                            ans.put("UL" + numLeftJumps, l);
-                            checkRightUpJumps(player, r - 2, c - 2, ans);
-                            checkLeftUpJumps(player, r - 2, c - 2, ans);
-                        }
-                    }
-                }
-            }
-        }
-        return ans;
-    }
-
-    public void getKingAvailableSteps(int r, int c) {
-        getAvailableSteps(1, r, c);
-        getAvailableSteps(2, r, c);
-    }
-
-    public void getAvailableSteps(int player, int r, int c) {
-        if (player == 1) {
-            //piece is black
-            if ((r - 1) >= 0 && (r - 1) < 8 && (c - 1) >= 0 && (c - 1) < 8) {
-                if (board[r - 1][c - 1] == 0) {
-                    List<Integer> l = new ArrayList<>();
-                    l.add(r - 1);
-                    l.add(c - 1);
-                    stepsPossible.add(l);
-                }
-            }
-            if ((r - 1) >= 0 && (r - 1) < 8 && (c + 1) >= 0 && (c + 1) < 8) {
-                if (board[r - 1][c + 1] == 0) {
-                    List<Integer> l = new ArrayList<Integer>();
-                    l.add(r - 1);
-                    l.add(c + 1);
-                    stepsPossible.add(l);
-                }
-            }
-        } else if (player == 2) { //piece is white
-            if ((r + 1) >= 0 && (r + 1) < 8 && (c - 1) >= 0 && (c - 1) < 8) {
-                if (board[r + 1][c - 1] == 0) {
-                    List<Integer> l = new ArrayList<>();
-                    l.add(r + 1);
-                    l.add(c - 1);
-                    stepsPossible.add(l);
-                }
-            }
-            if ((r + 1) >= 0 && (r + 1) < 8 && (c + 1) >= 0 && (c + 1) < 8) {
-                if (board[r + 1][c + 1] == 0) {
-                    List<Integer> l = new ArrayList<Integer>();
-                    l.add(r + 1);
-                    l.add(c + 1);
-                    stepsPossible.add(l);
-                }
-            }
-        }
-    }
-
     public void checkAvailableMovesForPiece(int player, int r, int c) {
-        stepsPossible = new ArrayList<>();
-        Map<String, List<Integer>> lu = new HashMap<>();
-        Map<String, List<Integer>> ld = new HashMap<>();
-        Map<String, List<Integer>> ru = new HashMap<>();
-        Map<String, List<Integer>> rd = new HashMap<>();
-        leftUpJumpsPossible = checkLeftUpJumps(player, r, c, lu);
-        leftDownJumpsPossible = checkLeftDownJumps(player, r, c, ld);
-        rightUpJumpsPossible = checkRightUpJumps(player, r, c, ru);
-        rightDownJumpsPossible = checkRightDownJumps(player, r, c, rd);
-        if (leftUpJumpsPossible.isEmpty() && leftDownJumpsPossible.isEmpty()
-                && rightDownJumpsPossible.isEmpty() && rightUpJumpsPossible.isEmpty()) {
-            if (player == 1 || player == 2) {
-                getAvailableSteps(player, r, c);
-            } else {
-                getKingAvailableSteps(r, c);
+        targets = 0;
+        int s = Bitboard.square(r, c);
+        if (s < 0) {
+            return;
+        }
+        boolean isBlack = player == 1 || player == 3;
+        int own = isBlack ? black : red;
+        int opp = isBlack ? red : black;
+        int n = Bitboard.generatePieceMoves(s, own, opp, kings, isBlack, pieceMoves, 0);
+        for (int i = 0; i < n; i++) {
+            int move = pieceMoves[i];
+            //every square along a jump tree can be clicked to make that jump
+            int squares = Move.isJump(move)
+                    ? Bitboard.jumpPath(s, Move.direction(move), opp, ~(own | opp))
+                    : 1 << Move.to(move);
+            for (int t = squares & ~targets; t != 0; t &= t - 1) {
+                targetMoves[Integer.numberOfTrailingZeros(t)] = move;
             }
+            targets |= squares;
         }
     }
 }
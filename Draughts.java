@@ -0,0 +1,449 @@
+package org.cis1200.checkers;
+
+import java.util.Arrays;
+
+/**
+ * A model for draughts on any board a Variant describes, 10x10
+ * international draughts included.
+ * <p>
+ * Each side's pieces and the kings are long masks with one bit per dark
+ * square, numbered as in Variant, so the position of a 10x10 game is three
+ * longs and moves are found with shifts and the variant's neighbour
+ * tables rather than by scanning cells. Black starts on the bottom rows
+ * and moves first, as in Checkers.
+ * <p>
+ * A move is packed into a long: the squares it captures in the low bits
+ * (at most 50 of them), the origin at bit 50 and the last square at bit
+ * 56. Captures are compulsory and a capture continues while it can; a
+ * captured piece stays on the board until the move is over, so it cannot
+ * be jumped twice and blocks the way. A man is only crowned when its move
+ * ends on the far row. Two captures that take the same pieces from the
+ * same square to the same square are the same move.
+ * <p>
+ * Usage: {@code Draughts <variant> <depth>} counts the positions to each
+ * depth from the initial position, as Perft does for Checkers. See
+ * Variant.forName for the variant names.
+ */
+public class Draughts {
+
+    /** Upper bound on the number of legal moves in any position. */
+    public static final int MAX_MOVES = 256;
+
+    private static final int FROM_SHIFT = 50;
+    private static final int TO_SHIFT = 56;
+    private static final long CAPTURES = (1L << FROM_SHIFT) - 1;
+
+    private final Variant variant;
+    private final int[][] neighbor;
+    private long black;
+    private long red;
+    private long kings;
+    private boolean blackPlayer;
+
+    // the kings mask before each makeMove that has not been unmade yet
+    private long[] undo = new long[64];
+    private int undoSize;
+
+    private final long[] scratch = new long[MAX_MOVES]; // for the click helpers
+
+    /**
+     * Sets up the initial position of variant.
+     */
+    public Draughts(Variant variant) {
+        this.variant = variant;
+        neighbor = variant.neighbor;
+        reset();
+    }
+
+    /**
+     * Copy constructor. The undo history is not copied.
+     */
+    public Draughts(Draughts other) {
+        variant = other.variant;
+        neighbor = other.neighbor;
+        black = other.black;
+        red = other.red;
+        kings = other.kings;
+        blackPlayer = other.blackPlayer;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("usage: Draughts <variant> <depth>");
+            return;
+        }
+        Draughts game = new Draughts(Variant.forName(args[0]));
+        int depth = Integer.parseInt(args[1]);
+        long[][] moves = new long[depth + 1][MAX_MOVES];
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long nodes = game.perft(d, moves, 0);
+            long nanos = Math.max(System.nanoTime() - start, 1);
+            System.out.println("depth " + d + ": " + nodes + " nodes in " + nanos / 1_000_000
+                    + " ms (" + nodes * 1_000_000_000L / nanos / 1000 + " knps)");
+        }
+    }
+
+    private long perft(int depth, long[][] moves, int ply) {
+        long[] list = moves[ply];
+        int n = generateMoves(list);
+        if (depth == 1) {
+            return n;
+        }
+        long nodes = 0;
+        for (int i = 0; i < n; i++) {
+            makeMove(list[i]);
+            nodes += perft(depth - 1, moves, ply + 1);
+            unmakeMove(list[i]);
+        }
+        return nodes;
+    }
+
+    /**
+     * (Re-)sets the game to the initial position of its variant.
+     */
+    public void reset() {
+        black = variant.initialBlack();
+        red = variant.initialRed();
+        kings = 0;
+        blackPlayer = true;
+        undoSize = 0;
+    }
+
+    /**
+     * Replaces the position with the given pieces, one bit per square as
+     * described in Variant.
+     *
+     * @throws IllegalArgumentException if a square holds both colours, a
+     *                                  king mask bit has no piece under it
+     *                                  or a bit is off the board
+     */
+    public void setPosition(long blackMask, long redMask, long kingMask, boolean blackToMove) {
+        if ((blackMask & redMask) != 0 || (kingMask & ~(blackMask | redMask)) != 0
+                || ((blackMask | redMask) & ~variant.all) != 0) {
+            throw new IllegalArgumentException();
+        }
+        black = blackMask;
+        red = redMask;
+        kings = kingMask;
+        blackPlayer = blackToMove;
+        undoSize = 0;
+    }
+
+    public Variant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Returns true if it is black's turn.
+     */
+    public boolean getCurrentPlayer() {
+        return blackPlayer;
+    }
+
+    /**
+     * Returns the piece on row r, column c, with the codes of
+     * Checkers.getPlayer: 0 for none, 1 and 2 for black and red men, 3 and
+     * 4 for their kings, or -1 off the board.
+     */
+    public int getPlayer(int r, int c) {
+        int size = variant.getSize();
+        if (r < 0 || r >= size || c < 0 || c >= size) {
+            return -1;
+        }
+        int s = variant.square(r, c);
+        if (s < 0) {
+            return 0;
+        }
+        int king = (int) (kings >>> s & 1) * 2;
+        if ((black >>> s & 1) != 0) {
+            return 1 + king;
+        } else if ((red >>> s & 1) != 0) {
+            return 2 + king;
+        }
+        return 0;
+    }
+
+    public long getBlackMask() {
+        return black;
+    }
+
+    public long getRedMask() {
+        return red;
+    }
+
+    public long getKingMask() {
+        return kings;
+    }
+
+    public int getNumBlack() {
+        return Long.bitCount(black);
+    }
+
+    public int getNumWhite() {
+        return Long.bitCount(red);
+    }
+
+    /**
+     * Returns 1 if black has won, 2 if red has, or 0 if the game goes on.
+     * A side with no legal move has lost.
+     */
+    public int checkWinner() {
+        return hasMoves() ? 0 : blackPlayer ? 2 : 1;
+    }
+
+    /**
+     * Returns whether the side to move has a legal move, without listing
+     * them.
+     */
+    public boolean hasMoves() {
+        long own = blackPlayer ? black : red;
+        long opp = blackPlayer ? red : black;
+        long empty = variant.all & ~(black | red);
+        //a piece that cannot step has no empty square next to it, so even a
+        //flying king can then only capture a piece right next to it
+        return steppers(own, empty) != 0 || adjacentCapturers(own, opp, empty) != 0;
+    }
+
+    /**
+     * Returns the squares of the pieces that can move, one bit per square.
+     */
+    public long getMovableMask() {
+        int n = generateMoves(scratch);
+        long movable = 0;
+        for (int i = 0; i < n; i++) {
+            movable |= 1L << from(scratch[i]);
+        }
+        return movable;
+    }
+
+    /**
+     * Returns the squares the piece on square from can end its move on.
+     */
+    public long getTargetMask(int from) {
+        int n = generateMoves(scratch);
+        long targets = 0;
+        for (int i = 0; i < n; i++) {
+            if (from(scratch[i]) == from) {
+                targets |= 1L << to(scratch[i]);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Returns the legal move from square from to square to, or 0 if there
+     * is none. When captures of different pieces both go from one square
+     * to the other, the first one generated is returned.
+     */
+    public long getMove(int from, int to) {
+        int n = generateMoves(scratch);
+        for (int i = 0; i < n; i++) {
+            if (from(scratch[i]) == from && to(scratch[i]) == to) {
+                return scratch[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the legal moves of the side to move into moves and returns
+     * how many there are. Moves of the same piece are next to each other.
+     */
+    public int generateMoves(long[] moves) {
+        long own = blackPlayer ? black : red;
+        long opp = blackPlayer ? red : black;
+        long empty = variant.all & ~(black | red);
+        int n = 0;
+        for (long p = capturers(own, opp, empty); p != 0; p &= p - 1) {
+            int s = Long.numberOfTrailingZeros(p);
+            n = addCaptures(s, s, 0, (kings >>> s & 1) != 0, opp, empty | 1L << s, moves, n, n);
+        }
+        if (n > 0) {
+            return variant.hasMaximumCapture() ? keepLongest(moves, n) : n;
+        }
+        for (long p = steppers(own, empty); p != 0; p &= p - 1) {
+            n = addSteps(Long.numberOfTrailingZeros(p), empty, moves, n);
+        }
+        return n;
+    }
+
+    /**
+     * Plays move, which must be a legal move of the side to move, and
+     * passes the turn. It can be taken back with unmakeMove.
+     */
+    public void makeMove(long move) {
+        long from = 1L << from(move);
+        long to = 1L << to(move);
+        long captured = captured(move);
+        if (undoSize == undo.length) {
+            undo = Arrays.copyOf(undo, undoSize * 2);
+        }
+        undo[undoSize++] = kings;
+        boolean king = (kings & from) != 0;
+        kings &= ~(from | captured);
+        if (blackPlayer) {
+            black = black & ~from | to;
+            red &= ~captured;
+            king |= (to & variant.topRow) != 0;
+        } else {
+            red = red & ~from | to;
+            black &= ~captured;
+            king |= (to & variant.bottomRow) != 0;
+        }
+        if (king) {
+            kings |= to;
+        }
+        blackPlayer = !blackPlayer;
+    }
+
+    /**
+     * Takes back move, which must be the last move played with makeMove
+     * that has not been unmade yet.
+     */
+    public void unmakeMove(long move) {
+        long from = 1L << from(move);
+        long to = 1L << to(move);
+        long captured = captured(move);
+        blackPlayer = !blackPlayer;
+        kings = undo[--undoSize];
+        if (blackPlayer) {
+            black = black & ~to | from;
+            red |= captured;
+        } else {
+            red = red & ~to | from;
+            black |= captured;
+        }
+    }
+
+    public static int from(long move) {
+        return (int) (move >>> FROM_SHIFT) & 63;
+    }
+
+    public static int to(long move) {
+        return (int) (move >>> TO_SHIFT) & 63;
+    }
+
+    /**
+     * Returns the squares move captures, or 0 if it is a step.
+     */
+    public static long captured(long move) {
+        return move & CAPTURES;
+    }
+
+    /**
+     * Returns a move in the usual notation, squares counted from 1 at the
+     * top left: "32-28" for a step, "28x17" for a capture.
+     */
+    public static String toString(long move) {
+        return (from(move) + 1) + (captured(move) != 0 ? "x" : "-") + (to(move) + 1);
+    }
+
+    // pieces of the side to move that may have a capture: every flying
+    // king, and the pieces that have a capture of a piece next to them
+    private long capturers(long own, long opp, long empty) {
+        long found = adjacentCapturers(own, opp, empty);
+        return variant.hasFlyingKings() ? found | own & kings : found;
+    }
+
+    // pieces that have an enemy piece next to them with an empty square
+    // behind it, in a direction they may capture in
+    private long adjacentCapturers(long own, long opp, long empty) {
+        Variant v = variant;
+        long up = blackPlayer || v.menCaptureBackwards() ? own : own & kings;
+        long down = !blackPlayer || v.menCaptureBackwards() ? own : own & kings;
+        return (up & (v.downRight(opp & v.downRight(empty))
+                | v.downLeft(opp & v.downLeft(empty))))
+                | (down & (v.upRight(opp & v.upRight(empty)) | v.upLeft(opp & v.upLeft(empty))));
+    }
+
+    private long steppers(long own, long empty) {
+        Variant v = variant;
+        long up = blackPlayer ? own : own & kings;
+        long down = blackPlayer ? own & kings : own;
+        return (up & (v.downRight(empty) | v.downLeft(empty)))
+                | (down & (v.upRight(empty) | v.upLeft(empty)));
+    }
+
+    private boolean mayMove(int dir, boolean king) {
+        return king || Bitboard.isUp(dir) == blackPlayer;
+    }
+
+    /**
+     * Follows every capture the piece that started on from can go on with
+     * from square s, having taken captured so far, and adds each one that
+     * cannot go any further.
+     *
+     * @param start where the moves of this piece begin in moves
+     * @return the new end of the list
+     */
+    private int addCaptures(int from, int s, long captured, boolean king, long opp, long empty,
+                            long[] moves, int start, int n) {
+        boolean more = false;
+        long prey = opp & ~captured;
+        for (int d = 0; d < 4; d++) {
+            if (!king && !variant.menCaptureBackwards() && !mayMove(d, false)) {
+                continue;
+            }
+            int over = neighbor[d][s];
+            if (king && variant.hasFlyingKings()) {
+                while (over >= 0 && (empty >>> over & 1) != 0) {
+                    over = neighbor[d][over];
+                }
+            }
+            if (over < 0 || (prey >>> over & 1) == 0) {
+                continue;
+            }
+            for (int to = neighbor[d][over]; to >= 0 && (empty >>> to & 1) != 0;
+                 to = neighbor[d][to]) {
+                more = true;
+                n = addCaptures(from, to, captured | 1L << over, king, opp, empty, moves, start, n);
+                if (!king || !variant.hasFlyingKings()) {
+                    break;
+                }
+            }
+        }
+        if (!more && captured != 0) {
+            long move = captured | (long) from << FROM_SHIFT | (long) s << TO_SHIFT;
+            for (int i = start; i < n; i++) {
+                if (moves[i] == move) {
+                    return n;
+                }
+            }
+            moves[n++] = move;
+        }
+        return n;
+    }
+
+    private int addSteps(int s, long empty, long[] moves, int n) {
+        boolean king = (kings >>> s & 1) != 0;
+        for (int d = 0; d < 4; d++) {
+            if (!mayMove(d, king)) {
+                continue;
+            }
+            for (int to = neighbor[d][s]; to >= 0 && (empty >>> to & 1) != 0;
+                 to = neighbor[d][to]) {
+                moves[n++] = (long) s << FROM_SHIFT | (long) to << TO_SHIFT;
+                if (!king || !variant.hasFlyingKings()) {
+                    break;
+                }
+            }
+        }
+        return n;
+    }
+
+    // keeps only the captures that take the most pieces, in order
+    private static int keepLongest(long[] moves, int n) {
+        int most = 0;
+        for (int i = 0; i < n; i++) {
+            most = Math.max(most, Long.bitCount(captured(moves[i])));
+        }
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            if (Long.bitCount(captured(moves[i])) == most) {
+                moves[kept++] = moves[i];
+            }
+        }
+        return kept;
+    }
+}
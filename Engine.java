@@ -0,0 +1,277 @@
+package org.cis1200.checkers;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A computer player for Checkers.
+ * <p>
+ * The engine runs an alpha-beta search with iterative deepening: it
+ * searches to depth 1, then 2, and so on, each time trying the previous
+ * best move first. The clock is checked every few thousand nodes, and as
+ * soon as the time limit has passed the search unwinds and the best move
+ * of the last finished iteration is returned. So a move always comes back
+ * within the limit, however deep the search got.
+ * <p>
+ * The search plays moves on the Checkers it is given with makeMove and
+ * takes them back with unmakeMove, so the game is left as it was found. An
+ * Engine keeps per-search scratch buffers and must only be used by one
+ * thread at a time.
+ */
+public class Engine {
+
+    /** Score of a won position, less one for each ply needed to win. */
+    public static final int WIN = 30000;
+    public static final int MAX_PLY = 128;
+
+    /**
+     * Scores at least this high are wins and scores at most -WON losses:
+     * a win found in the search is at most MAX_PLY plies away, and one
+     * found in the tablebase a further Tablebase.MAX_DISTANCE.
+     */
+    public static final int WON = WIN - MAX_PLY - Tablebase.MAX_DISTANCE - 1;
+
+    private static final int INFINITY = WIN + 1;
+    private static final int CHECK_INTERVAL = 4095; // nodes between clock checks
+
+    private final TranspositionTable tt;
+    private final int[][] moves = new int[MAX_PLY + 1][Move.MAX_MOVES];
+    private final long[] path = new long[MAX_PLY + 1];
+
+    private long nodes;
+    private long deadline;
+    private boolean stopped;
+    private int rootBest;
+
+    // set by ParallelSearch to stop helper searches and to spread the
+    // helpers over different depths
+    private AtomicBoolean stopSignal = new AtomicBoolean();
+    private int depthSkew;
+
+    private Tablebase tablebase;
+    private int tablebasePieces;
+    private OpeningBook book;
+
+    public Engine() {
+        this(new TranspositionTable(20, TranspositionTable.Replacement.DEPTH_PREFERRED));
+    }
+
+    public Engine(TranspositionTable tt) {
+        this.tt = tt;
+    }
+
+    /**
+     * Searches game for at most timeLimitMillis milliseconds.
+     */
+    public SearchResult search(Checkers game, long timeLimitMillis) {
+        return search(game, timeLimitMillis, MAX_PLY);
+    }
+
+    /**
+     * Searches game until maxDepth is reached or timeLimitMillis
+     * milliseconds have passed, whichever comes first.
+     */
+    public SearchResult search(Checkers game, long timeLimitMillis, int maxDepth) {
+        long start = System.nanoTime();
+        deadline = start + timeLimitMillis * 1_000_000;
+        nodes = 0;
+        stopped = false;
+        tt.newSearch();
+
+        int[] rootMoves = moves[0];
+        int n = game.generateMoves(rootMoves);
+        if (n == 0) {
+            return new SearchResult(0, -WIN, 0, 0, System.nanoTime() - start);
+        }
+        int bookMove = book == null ? 0 : book.bestMove(game);
+        if (bookMove != 0) {
+            return new SearchResult(bookMove, 0, 0, 0, System.nanoTime() - start, true);
+        }
+        int bestMove = rootMoves[0];
+        int bestScore = 0;
+        int depthDone = 0;
+        for (int depth = 1 + depthSkew; depth <= maxDepth && n > 1; depth++) {
+            rootBest = 0;
+            int score = searchRoot(game, depth, n);
+            if (stopped) {
+                //the previous best move is searched first, so any move that
+                //finished in this iteration is at least as good
+                if (rootBest != 0) {
+                    bestMove = rootBest;
+                }
+                break;
+            }
+            bestMove = rootBest;
+            bestScore = score;
+            depthDone = depth;
+            if (Math.abs(score) >= WON) {
+                break; //the game is decided, searching deeper won't change it
+            }
+        }
+        return new SearchResult(bestMove, bestScore, depthDone, nodes, System.nanoTime() - start);
+    }
+
+    /**
+     * Makes search answer with a move from book, without searching, when
+     * the book has one for the position. Pass null to stop using one.
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Makes the search use exact results from tablebase for positions with
+     * few enough pieces. Pass null to stop using one.
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+        this.tablebasePieces = tablebase == null ? 0 : tablebase.getMaxPieces();
+    }
+
+    /**
+     * Makes the search stop soon after signal is set, as if its time had
+     * run out.
+     */
+    void setStopSignal(AtomicBoolean signal) {
+        stopSignal = signal;
+    }
+
+    /**
+     * Makes iterative deepening start skew plies deeper than usual.
+     */
+    void setDepthSkew(int skew) {
+        depthSkew = skew;
+    }
+
+    private int searchRoot(Checkers game, int depth, int n) {
+        int[] list = moves[0];
+        path[0] = game.getHash();
+        int alpha = -INFINITY;
+        for (int i = 0; i < n; i++) {
+            int move = list[i];
+            game.makeMove(move);
+            int score = -alphaBeta(game, depth - 1, -INFINITY, -alpha, 1);
+            game.unmakeMove(move);
+            if (stopped) {
+                break;
+            }
+            if (score > alpha) {
+                alpha = score;
+                rootBest = move;
+                //keep the best move at the front for the next iteration
+                System.arraycopy(list, 0, list, 1, i);
+                list[0] = move;
+            }
+        }
+        return alpha;
+    }
+
+    private int alphaBeta(Checkers game, int depth, int alpha, int beta, int ply) {
+        if ((++nodes & CHECK_INTERVAL) == 0
+                && (System.nanoTime() - deadline > 0 || stopSignal.get())) {
+            stopped = true;
+        }
+        if (stopped) {
+            return 0;
+        }
+        long key = game.getHash();
+        path[ply] = key;
+        for (int i = ply - 4; i >= 0; i -= 2) {
+            if (path[i] == key) {
+                return 0; //repeating a position on this line is a draw
+            }
+        }
+        if (Integer.bitCount(game.getBlackMask() | game.getRedMask()) <= tablebasePieces) {
+            int result = tablebase.probe(game);
+            if (result != Tablebase.NOT_FOUND) {
+                //ply + distance never reaches past WON, so these scores are
+                //adjusted in the table like any other win
+                int distance = Tablebase.distance(result);
+                return result == 0 ? 0 : result > 0 ? WIN - ply - distance : -WIN + ply + distance;
+            }
+        }
+
+        int[] list = moves[ply];
+        int n = game.generateMoves(list);
+        if (n == 0) {
+            return -WIN + ply;
+        }
+        //jumps are forced, so keep searching past the horizon until the
+        //position is quiet
+        if ((depth <= 0 && !Move.isJump(list[0])) || ply >= MAX_PLY) {
+            return Evaluator.evaluate(game);
+        }
+        depth = Math.max(depth, 0);
+
+        int ttMove = 0;
+        long entry = tt.probe(key);
+        if (entry != TranspositionTable.MISS) {
+            ttMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                    return score;
+                }
+            }
+            for (int i = 1; i < n; i++) {
+                if (list[i] == ttMove) {
+                    list[i] = list[0];
+                    list[0] = ttMove;
+                    break;
+                }
+            }
+        }
+
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestMove = 0;
+        for (int i = 0; i < n; i++) {
+            int move = list[i];
+            game.makeMove(move);
+            int score = -alphaBeta(game, depth - 1, -beta, -alpha, ply + 1);
+            game.unmakeMove(move);
+            if (stopped) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = best <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                : best >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+        tt.store(key, depth, bound, toTable(best, ply), bestMove);
+        return best;
+    }
+
+    // win scores count plies from the root, but the table stores them
+    // counted from the position itself so entries can be shared between
+    // different paths
+
+    private static int toTable(int score, int ply) {
+        if (score >= WON) {
+            return score + ply;
+        } else if (score <= -WON) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= WON) {
+            return score - ply;
+        } else if (score <= -WON) {
+            return score + ply;
+        }
+        return score;
+    }
+}
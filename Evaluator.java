@@ -0,0 +1,39 @@
+package org.cis1200.checkers;
+
+/**
+ * Static evaluation of Checkers positions for the computer player.
+ * <p>
+ * Scores are in hundredths of a man and always from the point of view of
+ * the side to move, so a positive score means the side to move is ahead.
+ */
+public final class Evaluator {
+
+    public static final int MAN = 100;
+    public static final int KING = 150;
+
+    private static final int ADVANCED = 8; // man in the opponent's half
+    private static final int BACK_ROW = 6; // man still guarding its back row
+
+    private static final int TOP_HALF = 0x0000FFFF;
+    private static final int BOTTOM_HALF = 0xFFFF0000;
+
+    private Evaluator() {
+    }
+
+    public static int evaluate(Checkers game) {
+        return evaluate(game.getBlackMask(), game.getRedMask(), game.getKingMask(),
+                game.getCurrentPlayer());
+    }
+
+    public static int evaluate(int black, int red, int kings, boolean blackToMove) {
+        int blackMen = black & ~kings;
+        int redMen = red & ~kings;
+        int score = MAN * (Integer.bitCount(blackMen) - Integer.bitCount(redMen))
+                + KING * (Integer.bitCount(black & kings) - Integer.bitCount(red & kings))
+                + ADVANCED * (Integer.bitCount(blackMen & TOP_HALF)
+                        - Integer.bitCount(redMen & BOTTOM_HALF))
+                + BACK_ROW * (Integer.bitCount(blackMen & Bitboard.BOTTOM_ROW)
+                        - Integer.bitCount(redMen & Bitboard.TOP_ROW));
+        return blackToMove ? score : -score;
+    }
+}
@@ -0,0 +1,280 @@
+package org.cis1200.checkers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An append-only file of finished (or unfinished) games, readable by game
+ * id without looking at any other game.
+ * <p>
+ * Each game is a 16-byte header (the start position's black, red and kings
+ * masks, a flags byte with bit 0 set when black moves first, the result
+ * and the number of moves) followed by the moves as packed Move values of
+ * two bytes each. A second file next to it, with ".idx" appended to the
+ * name, holds the 8-byte offset of every game, so game i is found by
+ * reading entry i. Both files are read through memory maps of 1 GiB
+ * segments; data segments overlap by the largest possible game so that
+ * every game lies inside a single segment.
+ * <p>
+ * Games are written data first and index second. When the archive is
+ * opened, any data past the last indexed game is what a crash left
+ * behind, and it is cut off.
+ * <p>
+ * Reads may happen from any number of threads at once; appends must not
+ * overlap each other.
+ * <p>
+ * Usage: {@code GameArchive <file>} replays every game in the archive and
+ * prints how fast that went.
+ */
+public class GameArchive implements Closeable {
+
+    public static final int UNKNOWN = 0;
+    public static final int BLACK_WON = 1;
+    public static final int RED_WON = 2;
+    public static final int DRAWN = 3;
+
+    /** The most moves one game can hold. */
+    public static final int MAX_GAME_LENGTH = 0xFFFF;
+
+    static final int HEADER_BYTES = 16;
+    static final int MAX_RECORD_BYTES = HEADER_BYTES + 2 * MAX_GAME_LENGTH;
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private final Mapping dataMap;
+    private final Mapping indexMap;
+    private final ByteBuffer record = ByteBuffer.allocate(MAX_RECORD_BYTES);
+    private final ByteBuffer entry = ByteBuffer.allocate(8);
+    private volatile long size; // number of games
+    private long end; // length of the data file
+
+    /**
+     * Opens the archive in file, creating it if it does not exist.
+     */
+    public GameArchive(Path file) throws IOException {
+        data = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        index = FileChannel.open(file.resolveSibling(file.getFileName() + ".idx"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dataMap = new Mapping(data, MAX_RECORD_BYTES);
+        indexMap = new Mapping(index, 0);
+
+        //drop an index entry whose game never made it to disk, then any data
+        //that no index entry points to
+        long games = index.size() / 8;
+        long dataSize = data.size();
+        end = 0;
+        while (games > 0) {
+            ByteBuffer last = ByteBuffer.allocate(8);
+            index.read(last, (games - 1) * 8);
+            long offset = last.getLong(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (offset + HEADER_BYTES <= dataSize) {
+                data.read(header, offset);
+                long recordEnd = offset + HEADER_BYTES + 2L * (header.getShort(14) & 0xFFFF);
+                if (recordEnd <= dataSize) {
+                    end = recordEnd;
+                    break;
+                }
+            }
+            games--;
+        }
+        index.truncate(games * 8);
+        data.truncate(end);
+        size = games;
+    }
+
+    /**
+     * Returns the number of games in the archive.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Adds a game that starts from the position start is in now and
+     * continues with the first n moves of moves.
+     *
+     * @param result one of UNKNOWN, BLACK_WON, RED_WON and DRAWN
+     * @return the id of the new game
+     */
+    public synchronized long append(Checkers start, int[] moves, int n, int result)
+            throws IOException {
+        if (n < 0 || n > MAX_GAME_LENGTH || result < UNKNOWN || result > DRAWN) {
+            throw new IllegalArgumentException();
+        }
+        record.clear();
+        record.putInt(start.getBlackMask()).putInt(start.getRedMask())
+                .putInt(start.getKingMask()).put((byte) (start.getCurrentPlayer() ? 1 : 0))
+                .put((byte) result).putShort((short) n);
+        for (int i = 0; i < n; i++) {
+            record.putShort((short) moves[i]);
+        }
+        record.flip();
+        long offset = end;
+        while (record.hasRemaining()) {
+            data.write(record, offset + record.position());
+        }
+        entry.clear();
+        entry.putLong(offset).flip();
+        while (entry.hasRemaining()) {
+            index.write(entry, size * 8 + entry.position());
+        }
+        end = offset + HEADER_BYTES + 2L * n;
+        return size++;
+    }
+
+    /**
+     * Returns the result of a game, one of UNKNOWN, BLACK_WON, RED_WON and
+     * DRAWN.
+     */
+    public int getResult(long id) throws IOException {
+        long offset = offset(id);
+        return dataMap.segment(offset, HEADER_BYTES).get(position(offset) + 13);
+    }
+
+    public int getMoveCount(long id) throws IOException {
+        long offset = offset(id);
+        return dataMap.segment(offset, HEADER_BYTES).getShort(position(offset) + 14) & 0xFFFF;
+    }
+
+    /**
+     * Copies the moves of a game into out and returns how many there are.
+     */
+    public int getMoves(long id, int[] out) throws IOException {
+        long offset = offset(id);
+        int n = getMoveCount(id);
+        ByteBuffer segment = dataMap.segment(offset, HEADER_BYTES + 2 * n);
+        int at = position(offset) + HEADER_BYTES;
+        for (int i = 0; i < n; i++) {
+            out[i] = segment.getShort(at + 2 * i) & 0xFFFF;
+        }
+        return n;
+    }
+
+    /**
+     * Puts game into the position after the first ply moves of a game.
+     * The moves are played with makeMove, so unmakeMove steps back
+     * through them.
+     *
+     * @throws IllegalArgumentException if ply is more than the game's length
+     * @throws IllegalStateException    if the game holds an illegal move
+     */
+    public void load(long id, int ply, Checkers game) throws IOException {
+        long offset = offset(id);
+        ByteBuffer segment = dataMap.segment(offset, HEADER_BYTES);
+        int at = position(offset);
+        int n = segment.getShort(at + 14) & 0xFFFF;
+        if (ply < 0 || ply > n) {
+            throw new IllegalArgumentException();
+        }
+        segment = dataMap.segment(offset, HEADER_BYTES + 2 * ply);
+        game.setPosition(segment.getInt(at), segment.getInt(at + 4), segment.getInt(at + 8),
+                (segment.get(at + 12) & 1) != 0);
+        int[] legal = new int[Move.MAX_MOVES];
+        for (int i = 0; i < ply; i++) {
+            int move = segment.getShort(at + HEADER_BYTES + 2 * i) & 0xFFFF;
+            int count = game.generateMoves(legal);
+            int m = 0;
+            while (m < count && legal[m] != move) {
+                m++;
+            }
+            if (m == count) {
+                throw new IllegalStateException("game " + id + " has an illegal move at ply " + i);
+            }
+            game.makeMove(move);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        data.close();
+        index.close();
+    }
+
+    private long offset(long id) throws IOException {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("no game " + id);
+        }
+        long at = id * 8;
+        return indexMap.segment(at, 8).getLong(position(at));
+    }
+
+    private static int position(long offset) {
+        return (int) (offset % SEGMENT_BYTES);
+    }
+
+    /**
+     * Read-only maps of a growing file, one per SEGMENT_BYTES, each
+     * reaching overlap bytes into the next. A segment is mapped again when
+     * a read needs bytes that were appended after it was mapped.
+     */
+    private static final class Mapping {
+        private final FileChannel channel;
+        private final long overlap;
+        private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+        Mapping(FileChannel channel, long overlap) {
+            this.channel = channel;
+            this.overlap = overlap;
+        }
+
+        /**
+         * Returns the segment holding the length bytes at offset; they
+         * start at position(offset) in it.
+         */
+        MappedByteBuffer segment(long offset, int length) throws IOException {
+            int k = (int) (offset / SEGMENT_BYTES);
+            long needed = position(offset) + (long) length;
+            MappedByteBuffer[] s = segments;
+            if (k < s.length && s[k] != null && s[k].capacity() >= needed) {
+                return s[k];
+            }
+            return map(k, needed);
+        }
+
+        private synchronized MappedByteBuffer map(int k, long needed) throws IOException {
+            MappedByteBuffer[] s = segments;
+            if (k < s.length && s[k] != null && s[k].capacity() >= needed) {
+                return s[k];
+            }
+            long start = k * SEGMENT_BYTES;
+            long length = Math.min(channel.size() - start, SEGMENT_BYTES + overlap);
+            if (length < needed) {
+                throw new IOException("archive is shorter than its index says");
+            }
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            s = Arrays.copyOf(s, Math.max(s.length, k + 1));
+            s[k] = segment;
+            segments = s;
+            return segment;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("usage: GameArchive <file>");
+            return;
+        }
+        try (GameArchive archive = new GameArchive(Path.of(args[0]))) {
+            Checkers game = new Checkers();
+            long plies = 0;
+            long start = System.nanoTime();
+            for (long id = 0; id < archive.size(); id++) {
+                int n = archive.getMoveCount(id);
+                archive.load(id, n, game);
+                plies += n;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d games, %d plies replayed in %.2f s (%.0f games/s)%n",
+                    archive.size(), plies, seconds, archive.size() / seconds);
+        }
+    }
+}
@@ -7,16 +7,16 @@ package org.cis1200.checkers;
  */
 
 import javax.swing.*;
-import java.util.*;
-import java.util.List;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 
 /**
- * This class instantiates a Checkers object, which is the model for the game.
- * As the user clicks the game board, the model is updated. Whenever the model
- * is updated, the game board repaints itself and updates its status JLabel to
- * reflect the current state of the model.
+ * This class is the view of the game. It draws the latest GameSnapshot of
+ * the game and passes the user's clicks to a GameController, which
+ * updates the model off the event dispatch thread. Whenever the model is
+ * updated, the controller hands the game board a new snapshot, and the
+ * game board repaints itself and updates its status JLabel to reflect it.
  * <p>
  * This game adheres to a Model-View-Controller design framework. This
  * framework is very effective for turn-based games. We STRONGLY
@@ -24,26 +24,48 @@ import java.awt.event.*;
  * for more details on Model-View-Controller:
  * https://www.seas.upenn.edu/~cis120/current/files/slides/lec37.pdf
  * <p>
- * In a Model-View-Controller framework, GameBoard stores the model as a field
- * and acts as both the controller (with a MouseListener) and the view (with
- * its paintComponent method and the status JLabel).
+ * In a Model-View-Controller framework, GameBoard is the view (with its
+ * paintComponent method and the status JLabel) and forwards mouse clicks
+ * to the controller, GameController, which owns the model.
+ * <p>
+ * The empty board and a sprite of each kind of piece are drawn once into
+ * images shared by every GameBoard, so painting is a few image copies
+ * and highlight rings. A new snapshot only repaints the squares that
+ * look different from the last one.
  */
 @SuppressWarnings("serial")
 public class GameBoard extends JPanel {
 
-    private Checkers ttt; // model for the game
+    private final GameController controller;
+    private GameSnapshot snapshot; // what is drawn; null until the first one
     private JLabel status; // current status text
     private JLabel blackPieces;
     private JLabel whitePieces;
+    private JProgressBar progress; // shown while work is in flight
+    private JSlider history; // the ply shown, for scrubbing through the game
+    private boolean showingPly; // whether history is being set from a snapshot
 
     // Game constants
     public static final int BOARD_WIDTH = 450;
     public static final int BOARD_HEIGHT = 450;
+    public static final int SQUARE = 50; // side of a square, in pixels
+    public static final int MARGIN = 25; // from the edge to the first square
+
+    private static final Color PLAYABLE = new Color(239, 231, 219);
+    private static final Color UNPLAYABLE = new Color(181, 108, 29);
+    private static final Color GOLD = new Color(212, 175, 55, 150);
+    private static final Color MOVABLE = Color.YELLOW;
+    private static final Color SELECTED = Color.GREEN;
+    private static final Color TARGET = Color.GREEN;
+    private static final Stroke THIN = new BasicStroke(1);
+    private static final Stroke KING_RINGS = new BasicStroke(3);
+    private static final Stroke HIGHLIGHT = new BasicStroke(5);
 
     /**
      * Initializes the game board.
      */
-    public GameBoard(JLabel statusInit, JLabel blackInit, JLabel whiteInit) {
+    public GameBoard(JLabel statusInit, JLabel blackInit, JLabel whiteInit,
+                     JProgressBar progressInit, JSlider historyInit) {
         // creates border around the court area, JComponent method
         setBorder(BorderFactory.createLineBorder(Color.BLACK));
 
@@ -51,189 +73,237 @@ public class GameBoard extends JPanel {
         // keyboard focus, key events are handled by its key listener.
         setFocusable(true);
 
-        ttt = new Checkers(); // initializes model for the game
         status = statusInit; // initializes the status JLabel
         blackPieces = blackInit;
         whitePieces = whiteInit;
+        progress = progressInit;
+        progress.setIndeterminate(true);
+        progress.setStringPainted(true);
+        progress.setVisible(false);
+        history = historyInit;
+        history.setMinimum(0);
+        history.setMaximum(0);
+
+        // snapshots are shown on the event dispatch thread
+        controller = new GameController(this::show, SwingUtilities::invokeLater);
+        history.addChangeListener(e -> {
+            if (!showingPly) {
+                controller.jump(history.getValue());
+            }
+        });
 
         /*
-         * Listens for mouse clicks. Updates the model, then updates the game
-         * board based off of the updated model.
+         * Listens for mouse clicks and passes them to the controller, which
+         * sends back a snapshot of the updated model.
          */
         addMouseListener(new MouseAdapter() {
             @Override
             public void mouseReleased(MouseEvent e) {
                 Point p = e.getPoint();
-                int r = (p.y - 30) / 50;
-                int c = (p.x - 30) / 50;
-                List<Integer> l = new ArrayList<>();
-                l.add(r);
-                l.add(c);
-
-                if (ttt.getPiecesMovable().contains(l)) {
-                    //set selected player to the player at r,c
-                    ttt.setPieceSelected(ttt.getPlayer(r, c), r, c);
-                } else if (ttt.getPlayer(r, c) == 0 && ttt.getPieceSelected() != null) {
-                    ttt.movePiece(r, c);
-                }
-                updateStatus(); // updates the status JLabel
-                repaint(); // repaints the game board
+                int r = Math.floorDiv(p.y - MARGIN, SQUARE);
+                int c = Math.floorDiv(p.x - MARGIN, SQUARE);
+                controller.click(r, c);
             }
         });
     }
 
+    /**
+     * Lets the computer play for one side.
+     *
+     * @param player 1 for black, 2 for red, or 0 for two human players
+     */
+    public void setComputerPlayer(int player) {
+        controller.setComputerPlayer(player);
+    }
+
+    /**
+     * Goes on with the game the journal recovered, or starts a new one if
+     * there was none.
+     */
+    public void resume() {
+        controller.resume();
+        requestFocusInWindow();
+    }
+
     /**
      * (Re-)sets the game to its initial state.
      */
     public void reset() {
-        ttt.reset();
-        status.setText("Black's Turn");
-        blackPieces.setText("<html>Number of Black Pieces: " + ttt.getNumBlack() + "</html>");
-        whitePieces.setText("<html>Number of Red Pieces: " + ttt.getNumWhite() + "</html>");
-        repaint();
+        controller.reset();
         // Makes sure this component has keyboard/mouse focus
         requestFocusInWindow();
     }
 
+    public void undo() {
+        controller.undo();
+    }
+
+    public void redo() {
+        controller.redo();
+    }
+
     public void save() {
-        ttt.writeStateToFile();
-        status.setText("Game saved!");
-        repaint();
+        controller.save();
     }
 
     public void load() {
-        ttt.readStateFromFile("state.txt");
-        status.setText("Game loaded!");
-        repaint();
+        controller.load();
+    }
+
+    /**
+     * Shows a new snapshot of the game. Called on the event dispatch
+     * thread.
+     */
+    private void show(GameSnapshot s) {
+        GameSnapshot old = snapshot;
+        snapshot = s;
+        updateStatus();
+        progress.setVisible(s.isBusy());
+        progress.setString(s.getBusy());
+        showingPly = true;
+        history.setMaximum(s.getPlies() - 1);
+        history.setValue(s.getPly());
+        showingPly = false;
+        for (int sq = 0; sq < 32; sq++) {
+            int r = Bitboard.row(sq);
+            int c = Bitboard.col(sq);
+            if (old == null || look(old, r, c) != look(s, r, c)) {
+                //the highlight rings reach a little past the square
+                repaint(MARGIN + c * SQUARE - 2, MARGIN + r * SQUARE - 2, SQUARE + 4,
+                        SQUARE + 4);
+            }
+        }
+    }
+
+    // everything that decides how the square at (r, c) is drawn
+    private static int look(GameSnapshot s, int r, int c) {
+        return s.getPlayer(r, c) | (s.isMovable(r, c) ? 8 : 0) | (s.isTarget(r, c) ? 16 : 0)
+                | (s.isSelected(r, c) ? 32 : 0);
     }
 
     /**
      * Updates the JLabel to reflect the current state of the game.
      */
     private void updateStatus() {
-        if (ttt.getCurrentPlayer()) {
-            status.setText("Black's Turn");
-        } else {
-            status.setText("Red's Turn");
+        String text = snapshot.getCurrentPlayer() ? "Black's Turn" : "Red's Turn";
+        if (snapshot.getWinner() == 1) {
+            text = "Black wins!";
+        } else if (snapshot.getWinner() == 2) {
+            text = "Red wins!";
         }
-        blackPieces.setText("<html>Number of Black Pieces: " + ttt.getNumBlack() + "</html>");
-        whitePieces.setText("<html>Number of Red Pieces: " + ttt.getNumWhite() + "</html>");
-        int winner = ttt.checkWinner();
-        if (winner == 1) {
-            status.setText("Black wins!");
-        } else if (winner == 2) {
-            status.setText("Red wins!");
+        if (snapshot.getMessage() != null) {
+            text += " (" + snapshot.getMessage() + ")";
         }
+        status.setText(text);
+        blackPieces.setText("<html>Number of Black Pieces: " + snapshot.getNumBlack()
+                + "</html>");
+        whitePieces.setText("<html>Number of Red Pieces: " + snapshot.getNumWhite()
+                + "</html>");
     }
 
     /**
-     * Draws the game board.
-     * <p>
-     * There are many ways to draw a game board. This approach
-     * will not be sufficient for most games, because it is not
-     * modular. All of the logic for drawing the game board is
-     * in this method, and it does not take advantage of helper
-     * methods. Consider breaking up your paintComponent logic
-     * into multiple methods or classes, like Mushroom of Doom.
+     * Draws the game board: the cached empty board, then the piece and
+     * highlights of each playable square that needs repainting.
      */
-
-    public void highlightPiece(Graphics g) {
-        if (ttt.getPieceSelected() == null) {
-            return;
+    @Override
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        g.drawImage(Sprites.BOARD, MARGIN, MARGIN, null);
+        if (snapshot == null) {
+            return; // the game is still being set up
         }
-        int r = ttt.getPieceSelected()[1];
-        int c = ttt.getPieceSelected()[2];
         Graphics2D g2 = (Graphics2D) g;
-        g2.setStroke(new BasicStroke(5));
-        g.drawOval(27 + 50 * c, 27 + 50 * r, 45, 45);
-    }
-
-    public void highlightMovablePieces(Graphics g) {
-        List<List<Integer>> l = ttt.getPiecesMovable();
-        g.setColor(Color.yellow);
-        for (List<Integer> ls : l) {
-            int r = ls.get(0);
-            int c = ls.get(1);
-            Graphics2D g2 = (Graphics2D) g;
-            g2.setStroke(new BasicStroke(5));
-            g2.drawOval(27 + 50 * c, 27 + 50 * r, 45, 45);
+        Rectangle clip = g.getClipBounds();
+        for (int s = 0; s < 32; s++) {
+            int r = Bitboard.row(s);
+            int c = Bitboard.col(s);
+            int x = MARGIN + c * SQUARE;
+            int y = MARGIN + r * SQUARE;
+            if (clip == null || clip.intersects(x - 2, y - 2, SQUARE + 4, SQUARE + 4)) {
+                paintSquare(g2, r, c, x, y);
+            }
         }
     }
 
-    public void highlightAvailableMoves(Graphics g) {
-        int[] p = ttt.getPieceSelected();
-        if (p == null) {
-            return;
+    private void paintSquare(Graphics2D g, int r, int c, int x, int y) {
+        int player = snapshot.getPlayer(r, c);
+        if (player > 0) {
+            g.drawImage(Sprites.PIECES[player], x, y, null);
         }
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                List<Integer> box = new ArrayList<>();
-                box.add(i);
-                box.add(j);
-                if (ttt.isAvailableMove(box)) {
-                    g.setColor(Color.GREEN);
-                    Graphics2D g2 = (Graphics2D) g;
-                    g2.setStroke(new BasicStroke(1));
-                    g.drawOval(29 + 50 * j, 29 + 50 * i, 40, 40);
-                }
-            }
+        if (snapshot.isMovable(r, c)) {
+            g.setColor(MOVABLE);
+            g.setStroke(HIGHLIGHT);
+            g.drawOval(x + 2, y + 2, 45, 45);
+        }
+        if (snapshot.isTarget(r, c)) {
+            g.setColor(TARGET);
+            g.setStroke(THIN);
+            g.drawOval(x + 4, y + 4, 40, 40);
+        }
+        if (snapshot.isSelected(r, c)) {
+            g.setColor(SELECTED);
+            g.setStroke(HIGHLIGHT);
+            g.drawOval(x + 2, y + 2, 45, 45);
         }
     }
 
-    @Override
-    public void paintComponent(Graphics g) {
-        super.paintComponent(g);
+    /**
+     * The images every GameBoard draws from, made the first time one is
+     * painted.
+     */
+    private static final class Sprites {
+        static final Image BOARD = board();
+        static final Image[] PIECES = {null, man(Color.BLACK), man(Color.RED),
+            king(Color.BLACK), king(Color.RED)};
 
-        boolean white = true;
-        for (int i = 0; i < 8; i++) {
-            white = !white;
-            for (int j = 0; j < 8; j++) {
-                if (white) {
-                    g.setColor(new Color(239, 231, 219));
-                } else {
-                    g.setColor(new Color(181, 108, 29));
+        private static Image board() {
+            BufferedImage image = image(Bitboard.SIZE * SQUARE, Bitboard.SIZE * SQUARE,
+                    Transparency.OPAQUE);
+            Graphics g = image.getGraphics();
+            for (int r = 0; r < Bitboard.SIZE; r++) {
+                for (int c = 0; c < Bitboard.SIZE; c++) {
+                    g.setColor((r + c) % 2 == 0 ? UNPLAYABLE : PLAYABLE);
+                    g.fillRect(c * SQUARE, r * SQUARE, SQUARE, SQUARE);
                 }
-                g.fillRect(j * 50 + 25, i * 50 + 25, 50, 50);
-                white = !white;
             }
+            g.dispose();
+            return image;
         }
 
-        // Draws checkers onto the board
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                int player = ttt.getPlayer(i, j);
-                if (player == 1) {
-                    g.setColor(Color.BLACK);
-                    g.fillOval(30 + 50 * j, 30 + 50 * i, 40, 40);
-                    g.drawOval(30 + 50 * j, 30 + 50 * i, 40, 40);
-                } else if (player == 2) {
-                    g.setColor(Color.RED);
-                    g.fillOval(30 + 50 * j, 30 + 50 * i, 40, 40);
-                    g.drawOval(30 + 50 * j, 30 + 50 * i, 40, 40);
-                } else if (player == 3) {
-                    g.setColor(Color.BLACK);
-                    Graphics2D g2 = (Graphics2D) g;
-                    g2.setStroke(new BasicStroke(3));
-                    g2.drawOval(30 + 50 * j, 30 + 50 * i, 40, 40);
-                    g2.drawOval(35 + 50 * j, 35 + 50 * i, 30, 30);
-                    g2.drawOval(40 + 50 * j, 40 + 50 * i, 20, 20);
-                    g.setColor(new Color(212, 175, 55, 150));
-                    g.fillOval(30 + 50 * j, 30 + 50 * i, 40, 40);
-                } else if (player == 4) {
-                    g.setColor(Color.RED);
-                    Graphics2D g2 = (Graphics2D) g;
-                    g2.setStroke(new BasicStroke(3));
-                    g2.drawOval(30 + 50 * j, 30 + 50 * i, 40, 40);
-                    g2.drawOval(35 + 50 * j, 35 + 50 * i, 30, 30);
-                    g2.drawOval(40 + 50 * j, 40 + 50 * i, 20, 20);
-                    g.setColor(new Color(212, 175, 55, 150));
-                    g.fillOval(30 + 50 * j, 30 + 50 * i, 40, 40);
-                }
+        private static Image man(Color color) {
+            BufferedImage image = image(SQUARE, SQUARE, Transparency.TRANSLUCENT);
+            Graphics2D g = image.createGraphics();
+            g.setColor(color);
+            g.setStroke(THIN);
+            g.fillOval(5, 5, 40, 40);
+            g.drawOval(5, 5, 40, 40);
+            g.dispose();
+            return image;
+        }
+
+        private static Image king(Color color) {
+            BufferedImage image = image(SQUARE, SQUARE, Transparency.TRANSLUCENT);
+            Graphics2D g = image.createGraphics();
+            g.setColor(color);
+            g.setStroke(KING_RINGS);
+            g.drawOval(5, 5, 40, 40);
+            g.drawOval(10, 10, 30, 30);
+            g.drawOval(15, 15, 20, 20);
+            g.setColor(GOLD);
+            g.fillOval(5, 5, 40, 40);
+            g.dispose();
+            return image;
+        }
+
+        // an image in the screen's own format, so drawing it is a plain copy
+        private static BufferedImage image(int width, int height, int transparency) {
+            if (GraphicsEnvironment.isHeadless()) {
+                return new BufferedImage(width, height, transparency == Transparency.OPAQUE
+                        ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
             }
+            return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration().createCompatibleImage(width, height, transparency);
         }
-        highlightMovablePieces(g);
-        highlightAvailableMoves(g);
-        highlightPiece(g);
     }
 
     /**
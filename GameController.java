@@ -0,0 +1,337 @@
+package org.cis1200.checkers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs a game for a view, keeping everything slow off the view's thread.
+ * <p>
+ * The Checkers model belongs to a single rules thread, which also opens
+ * the move journal: every call here only queues a task for it and returns
+ * at once. Saving, loading and opening the opening book run on an I/O
+ * thread, and the computer player searches a copy of the game on a search
+ * thread; their results are applied back on the rules thread. After every change the
+ * controller takes a GameSnapshot and passes it to the view through the
+ * executor the view asked for, such as SwingUtilities::invokeLater.
+ * While work is in flight the snapshots say what is being done.
+ */
+public class GameController implements AutoCloseable {
+
+    public static final int COMPUTER_MOVE_MILLIS = 1000;
+    public static final String JOURNAL_FILE = "journal.bin";
+    public static final String BOOK_FILE = "book.bin";
+    public static final int BOOK_MIN_GAMES = 2;
+    public static final int MOVE_CACHE_LOG2_POSITIONS = 10;
+
+    private final ExecutorService rules = Executors.newSingleThreadExecutor(
+            r -> daemon(r, "checkers-rules"));
+    private final ExecutorService io = Executors.newSingleThreadExecutor(
+            r -> daemon(r, "checkers-io"));
+    private final ExecutorService search = Executors.newSingleThreadExecutor(
+            r -> daemon(r, "checkers-search"));
+
+    private final Consumer<GameSnapshot> view;
+    private final Executor viewExecutor;
+    private final Engine engine = new Engine(); // used on the search thread only
+
+    // everything below is used on the rules thread only
+    private final Checkers game = new Checkers();
+    private final PositionHistory history = new PositionHistory(game);
+    private final MoveCache moves = new MoveCache(MOVE_CACHE_LOG2_POSITIONS);
+    private int selected = -1; // square of the selected piece
+    private MoveJournal journal; // null if it could not be opened
+    private boolean resumed; // whether the journal had a game to go on with
+    private int computerPlayer; // 1 for black, 2 for red, 0 for two people
+    private boolean thinking; // whether a search is running
+    private int generation; // changes whenever the game is replaced
+    private final List<String> busy = new ArrayList<>();
+    private String message;
+
+    /**
+     * Starts a controller with the game recovered from the journal, or a
+     * new one. The journal and the opening book are opened in the
+     * background.
+     *
+     * @param view         told about every change of the game
+     * @param viewExecutor runs the calls to view
+     */
+    public GameController(Consumer<GameSnapshot> view, Executor viewExecutor) {
+        if (view == null || viewExecutor == null) {
+            throw new IllegalArgumentException();
+        }
+        this.view = view;
+        this.viewExecutor = viewExecutor;
+        io.execute(this::openBook);
+        //queued first, so every call finds the journal's game in place
+        rules.execute(this::openJournal);
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    //runs on the I/O thread
+    private void openBook() {
+        // the computer plays opening moves from the book if there is one
+        if (Files.exists(Paths.get(BOOK_FILE))) {
+            try {
+                OpeningBook book = new OpeningBook(Paths.get(BOOK_FILE), BOOK_MIN_GAMES);
+                search.execute(() -> engine.setOpeningBook(book));
+            } catch (IOException e) {
+                Trace.record(Trace.ERROR, Trace.LOAD_FAILED, 0, 0);
+            }
+        }
+    }
+
+    // every move is journaled, so the game goes on after a crash
+    private void openJournal() {
+        try {
+            journal = new MoveJournal(Paths.get(JOURNAL_FILE));
+            resumed = journal.recover(0, game);
+            history.clear(game);
+            game.setGameListener(journal.listener(0));
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+        } catch (IOException e) {
+            Trace.record(Trace.ERROR, Trace.JOURNAL_FAILED, 0, 0);
+        }
+    }
+
+    /**
+     * Goes on with the game the journal recovered, or starts a new one if
+     * there was none.
+     */
+    public void resume() {
+        rules.execute(() -> {
+            if (!resumed) {
+                newGame();
+            }
+            publish();
+            startComputerTurn();
+        });
+    }
+
+    /**
+     * (Re-)sets the game to its initial state.
+     */
+    public void reset() {
+        rules.execute(() -> {
+            newGame();
+            publish();
+            startComputerTurn();
+        });
+    }
+
+    private void newGame() {
+        generation++;
+        message = null;
+        selected = -1;
+        game.reset();
+        history.clear(game);
+    }
+
+    /**
+     * Handles a click on row r, column c: selects a piece that can move,
+     * or moves the selected piece there. Clicks while the computer is to
+     * move are ignored, unless the game has been rewound; a move played
+     * there drops the plies that came after it.
+     */
+    public void click(int r, int c) {
+        rules.execute(() -> {
+            if (isComputerTurn() && !history.canRedo()) {
+                return;
+            }
+            int s = Bitboard.square(r, c);
+            if (s < 0) {
+                return;
+            }
+            MoveCache.MoveSet legal = moves.get(game);
+            int move = legal.getMove(selected, s);
+            if ((legal.getMovableMask() >>> s & 1) != 0) {
+                selected = s;
+            } else if (move != 0) {
+                game.playMove(move);
+                selected = -1;
+                history.record(game);
+            }
+            message = null;
+            publish();
+            startComputerTurn();
+        });
+    }
+
+    /**
+     * Goes back one ply, if there is one.
+     */
+    public void undo() {
+        rules.execute(() -> rewind(history.undo()));
+    }
+
+    /**
+     * Goes forward one ply again, if the game was rewound.
+     */
+    public void redo() {
+        rules.execute(() -> rewind(history.redo()));
+    }
+
+    /**
+     * Goes to ply, 0 being the start of the game. Plies that do not exist
+     * (any more) are ignored.
+     */
+    public void jump(int ply) {
+        rules.execute(() -> {
+            if (ply >= 0 && ply < history.size()) {
+                rewind(history.jump(ply));
+            }
+        });
+    }
+
+    private void rewind(boolean changed) {
+        if (!changed) {
+            return;
+        }
+        generation++; // a search for the position left is not played
+        selected = -1;
+        history.restore(game);
+        message = null;
+        publish();
+        startComputerTurn();
+    }
+
+    /**
+     * Lets the computer play for one side.
+     *
+     * @param player 1 for black, 2 for red, or 0 for two human players
+     */
+    public void setComputerPlayer(int player) {
+        rules.execute(() -> {
+            computerPlayer = player;
+            generation++; // a search for the old setting is not played
+            startComputerTurn();
+        });
+    }
+
+    /**
+     * Saves the game to Checkers.STATE_FILE in the background.
+     */
+    public void save() {
+        rules.execute(() -> {
+            Checkers copy = new Checkers(game);
+            begin("Saving...");
+            publish();
+            io.execute(() -> {
+                boolean saved = copy.writeStateToFile();
+                rules.execute(() -> {
+                    end("Saving...");
+                    message = saved ? "game saved" : "could not save the game";
+                    publish();
+                });
+            });
+        });
+    }
+
+    /**
+     * Loads the game in Checkers.STATE_FILE in the background. The game is
+     * only replaced once the file has been read and checked.
+     */
+    public void load() {
+        rules.execute(() -> {
+            begin("Loading...");
+            publish();
+            io.execute(() -> {
+                Checkers loaded = new Checkers();
+                boolean ok = loaded.readStateFromFile(Checkers.STATE_FILE);
+                rules.execute(() -> {
+                    end("Loading...");
+                    if (ok) {
+                        generation++;
+                        selected = -1;
+                        game.setPosition(loaded.getBlackMask(), loaded.getRedMask(),
+                                loaded.getKingMask(), loaded.getCurrentPlayer());
+                        history.record(game);
+                        message = "game loaded";
+                    } else {
+                        message = "could not load the saved game";
+                    }
+                    publish();
+                    startComputerTurn();
+                });
+            });
+        });
+    }
+
+    /**
+     * Stops the background threads and closes the journal. Tasks already
+     * queued are finished first.
+     */
+    @Override
+    public void close() {
+        rules.execute(() -> {
+            if (journal != null) {
+                journal.close();
+            }
+        });
+        rules.shutdown();
+        io.shutdown();
+        search.shutdown();
+    }
+
+    private boolean isComputerTurn() {
+        return computerPlayer != 0 && game.getCurrentPlayer() == (computerPlayer == 1);
+    }
+
+    //the computer only plays at the end of the history, so it can be rewound
+    private void startComputerTurn() {
+        if (thinking || !isComputerTurn() || history.canRedo() || game.checkWinner() != 0) {
+            return;
+        }
+        thinking = true;
+        begin("Computer is thinking...");
+        publish();
+        int searched = generation;
+        Checkers copy = new Checkers(game);
+        search.execute(() -> {
+            SearchResult result = engine.search(copy, COMPUTER_MOVE_MILLIS);
+            rules.execute(() -> {
+                thinking = false;
+                end("Computer is thinking...");
+                //the game may have been reset or loaded while searching
+                if (searched == generation && isComputerTurn() && result.getMove() != 0) {
+                    game.playMove(result.getMove());
+                    selected = -1;
+                    history.record(game);
+                    message = result.isFromBook() ? "computer played a book move"
+                            : "computer searched depth " + result.getDepth() + ", "
+                            + result.getNodesPerSecond() / 1000 + " knps";
+                }
+                publish();
+                startComputerTurn();
+            });
+        });
+    }
+
+    private void begin(String task) {
+        busy.add(task);
+    }
+
+    private void end(String task) {
+        busy.remove(task);
+    }
+
+    private void publish() {
+        MoveCache.MoveSet legal = moves.get(game);
+        GameSnapshot snapshot = new GameSnapshot(game.getBlackMask(), game.getRedMask(),
+                game.getKingMask(), game.getCurrentPlayer(), game.checkWinner(), selected,
+                legal.getMovableMask(), legal.getTargetMask(selected), history.getPly(),
+                history.size(), message, busy.isEmpty() ? null : busy.get(busy.size() - 1));
+        viewExecutor.execute(() -> view.accept(snapshot));
+    }
+}
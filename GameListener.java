@@ -0,0 +1,46 @@
+package org.cis1200.checkers;
+
+/**
+ * Told about the turns of a Checkers game as they are played.
+ * <p>
+ * Only changes that are part of the game itself are reported: moves made
+ * with movePiece or playMove, and the position being replaced by reset or
+ * setPosition. The makeMove and unmakeMove calls of a search are not.
+ * Listeners are called on the thread that changed the game, after the
+ * change.
+ */
+public interface GameListener {
+
+    /**
+     * Called after move was played in game.
+     */
+    void moved(Checkers game, int move);
+
+    /**
+     * Called after the position of game was replaced as a whole.
+     */
+    void positionChanged(Checkers game);
+
+    /**
+     * Returns a listener that passes everything on to each of listeners in
+     * turn, since a game has room for only one.
+     */
+    static GameListener of(GameListener... listeners) {
+        GameListener[] all = listeners.clone();
+        return new GameListener() {
+            @Override
+            public void moved(Checkers game, int move) {
+                for (GameListener l : all) {
+                    l.moved(game, move);
+                }
+            }
+
+            @Override
+            public void positionChanged(Checkers game) {
+                for (GameListener l : all) {
+                    l.positionChanged(game);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,463 @@
+package org.cis1200.checkers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hosts any number of games for clients on this machine, with no window.
+ * <p>
+ * Clients talk a line protocol over TCP: each command is one line of
+ * words separated by single spaces and gets one line back, starting with
+ * "ok" or "error". Commands may be sent before the previous replies are
+ * read; replies come back in order. Any connection may use any game.
+ * <pre>
+ * new [variant]           ok &lt;game&gt;
+ * state &lt;game&gt;            ok &lt;black|red&gt; &lt;winner&gt;
+ *                         &lt;rows of piece codes, '/' between&gt;
+ * moves &lt;game&gt;            ok &lt;r,c of each piece that can move&gt;...
+ * select &lt;game&gt; r c       ok &lt;r,c of each square it can move to&gt;...
+ * move &lt;game&gt; r c         ok &lt;winner&gt;  (moves the selected piece)
+ * play &lt;game&gt; r c r c     ok &lt;winner&gt;  (select and move at once)
+ * winner &lt;game&gt;           ok &lt;winner&gt;
+ * end &lt;game&gt;              ok
+ * stats                   ok &lt;games&gt; &lt;moves&gt; &lt;latency percentiles&gt;
+ *                         move cache &lt;hits&gt; hits &lt;misses&gt; misses
+ * quit
+ * </pre>
+ * A plain "new" starts a game of Checkers; with a variant name (see
+ * Variant.forName), such as "new international", it starts a game of
+ * Draughts on that board, played with the same commands. Piece codes and
+ * winners are those of Checkers. Every connection gets
+ * its own thread: a virtual thread when the JVM has them, so thousands
+ * of clients cost little, or else a thread from a cached pool.
+ * <p>
+ * Usage: {@code GameServer [port]} to serve, or
+ * {@code GameServer bench <clients> <seconds> [window]} to measure a
+ * server with that many bot clients playing random games, each sending
+ * up to window commands before reading the replies.
+ */
+public class GameServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 7654;
+    public static final int MAX_GAME_PLIES = 300; // bots give up on a game after this
+    public static final int MOVE_CACHE_LOG2_POSITIONS = 16;
+
+    private final ServerSocket server;
+    private final ExecutorService connections = newConnectionExecutor();
+    private final Map<Integer, Session> games = new ConcurrentHashMap<>();
+    private final MoveCache moveCache = new MoveCache(MOVE_CACHE_LOG2_POSITIONS);
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final LongAdder moves = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    // a game of Checkers or of Draughts, and the piece its players have
+    // selected
+    private static final class Session {
+        final Checkers game;
+        final Draughts draughts;
+        int selected = -1;
+
+        Session(Checkers game, Draughts draughts) {
+            this.game = game;
+            this.draughts = draughts;
+        }
+
+        int size() {
+            return draughts == null ? Bitboard.SIZE : draughts.getVariant().getSize();
+        }
+
+        int getPlayer(int r, int c) {
+            return draughts == null ? game.getPlayer(r, c) : draughts.getPlayer(r, c);
+        }
+
+        int checkWinner() {
+            return draughts == null ? game.checkWinner() : draughts.checkWinner();
+        }
+    }
+
+    /**
+     * Starts serving on port of the loopback address, or on any free port
+     * if port is 0.
+     */
+    public GameServer(int port) throws IOException {
+        server = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "server-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("bench")) {
+            if (args.length < 3) {
+                System.out.println("usage: GameServer bench <clients> <seconds> [window]");
+                return;
+            }
+            bench(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    args.length > 3 ? Integer.parseInt(args[3]) : 1);
+            return;
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        GameServer server = new GameServer(port);
+        System.out.println("serving checkers on port " + server.getPort());
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Returns a thread per task executor: virtual threads if this JVM has
+     * them, else a cached pool of daemon threads.
+     */
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "server-connection");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Returns how many moves have been played on this server.
+     */
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    /**
+     * Returns how long commands took to handle, from reading them to
+     * having the reply.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        connections.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // closed, or a connection failed before it was accepted
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     s.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                     s.getOutputStream(), StandardCharsets.US_ASCII))) {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                long start = System.nanoTime();
+                String reply = handle(line);
+                latency.record(System.nanoTime() - start);
+                if (reply == null) {
+                    break;
+                }
+                out.write(reply);
+                out.write('\n');
+                //replies to commands sent together go out together
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    /**
+     * Runs one command and returns the reply, or null if the connection
+     * should be closed.
+     */
+    String handle(String line) {
+        String[] words = line.trim().split(" ");
+        try {
+            switch (words[0]) {
+                case "new":
+                    Session session;
+                    if (words.length == 1) {
+                        session = new Session(new Checkers(), null);
+                    } else if (words.length == 2) {
+                        try {
+                            session = new Session(null,
+                                    new Draughts(Variant.forName(words[1])));
+                        } catch (IllegalArgumentException e) {
+                            return "error unknown variant";
+                        }
+                    } else {
+                        return "error bad command";
+                    }
+                    int id = nextGame.getAndIncrement();
+                    games.put(id, session);
+                    return "ok " + id;
+                case "stats":
+                    return "ok " + games.size() + " " + moves.sum() + " " + latency.summary()
+                            + String.format(" move cache %d hits %d misses", moveCache.getHits(),
+                            moveCache.getMisses());
+                case "quit":
+                    return null;
+                default:
+                    break;
+            }
+            if (words.length < 2) {
+                return "error bad command";
+            }
+            Session session = games.get(Integer.parseInt(words[1]));
+            if (session == null) {
+                return "error unknown game";
+            }
+            synchronized (session) {
+                return handle(session, words);
+            }
+        } catch (NumberFormatException e) {
+            return "error bad command";
+        }
+    }
+
+    private String handle(Session session, String[] words) {
+        switch (words[0] + " " + words.length) {
+            case "state 2":
+                return "ok " + state(session);
+            case "moves 2":
+                if (session.draughts != null) {
+                    return "ok" + squares(session.draughts.getMovableMask(),
+                            session.draughts.getVariant());
+                }
+                return "ok" + squares(moveCache.get(session.game).getMovableMask());
+            case "winner 2":
+                return "ok " + session.checkWinner();
+            case "end 2":
+                games.remove(Integer.parseInt(words[1]));
+                return "ok";
+            case "select 4":
+                return select(session, Integer.parseInt(words[2]), Integer.parseInt(words[3]));
+            case "move 4":
+                return move(session, Integer.parseInt(words[2]), Integer.parseInt(words[3]));
+            case "play 6": {
+                String selected = select(session, Integer.parseInt(words[2]),
+                        Integer.parseInt(words[3]));
+                if (selected.startsWith("error")) {
+                    return selected;
+                }
+                return move(session, Integer.parseInt(words[4]), Integer.parseInt(words[5]));
+            }
+            default:
+                return "error bad command";
+        }
+    }
+
+    private String select(Session session, int r, int c) {
+        if (session.draughts != null) {
+            Draughts game = session.draughts;
+            int s = game.getVariant().square(r, c);
+            if (s < 0 || (game.getMovableMask() >>> s & 1) == 0) {
+                return "error not movable";
+            }
+            session.selected = s;
+            return "ok" + squares(game.getTargetMask(s), game.getVariant());
+        }
+        int s = Bitboard.square(r, c);
+        MoveCache.MoveSet legal = moveCache.get(session.game);
+        if (s < 0 || (legal.getMovableMask() >>> s & 1) == 0) {
+            return "error not movable";
+        }
+        session.selected = s;
+        return "ok" + squares(legal.getTargetMask(s));
+    }
+
+    private String move(Session session, int r, int c) {
+        if (session.draughts != null) {
+            Draughts game = session.draughts;
+            long move = game.getMove(session.selected, game.getVariant().square(r, c));
+            if (move == 0) {
+                return "error illegal move";
+            }
+            game.makeMove(move);
+            session.selected = -1;
+            moves.increment();
+            return "ok " + game.checkWinner();
+        }
+        int move = moveCache.get(session.game).getMove(session.selected, Bitboard.square(r, c));
+        if (move == 0) {
+            return "error illegal move";
+        }
+        session.game.playMove(move);
+        session.selected = -1;
+        moves.increment();
+        return "ok " + session.game.checkWinner();
+    }
+
+    private static String state(Session session) {
+        boolean blackToMove = session.draughts == null ? session.game.getCurrentPlayer()
+                : session.draughts.getCurrentPlayer();
+        StringBuilder sb = new StringBuilder(blackToMove ? "black " : "red ");
+        sb.append(session.checkWinner()).append(' ');
+        for (int r = 0; r < session.size(); r++) {
+            if (r > 0) {
+                sb.append('/');
+            }
+            for (int c = 0; c < session.size(); c++) {
+                sb.append(session.getPlayer(r, c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String squares(int mask) {
+        StringBuilder sb = new StringBuilder();
+        for (int m = mask; m != 0; m &= m - 1) {
+            int s = Integer.numberOfTrailingZeros(m);
+            sb.append(' ').append(Bitboard.row(s)).append(',').append(Bitboard.col(s));
+        }
+        return sb.toString();
+    }
+
+    private static String squares(long mask, Variant variant) {
+        StringBuilder sb = new StringBuilder();
+        for (long m = mask; m != 0; m &= m - 1) {
+            int s = Long.numberOfTrailingZeros(m);
+            sb.append(' ').append(variant.row(s)).append(',').append(variant.col(s));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs a server and the given number of bot clients against it for
+     * the given time, then prints the moves per second and the latency
+     * percentiles seen by the clients and by the server.
+     *
+     * @param window how many commands a bot sends before reading replies
+     */
+    private static void bench(int clients, int seconds, int window) throws Exception {
+        try (GameServer server = new GameServer(0)) {
+            LatencyHistogram replies = new LatencyHistogram();
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+            ExecutorService bots = newConnectionExecutor();
+            for (int i = 0; i < clients; i++) {
+                long seed = i;
+                bots.execute(() -> playBot(server.getPort(), seed, deadline, window, replies));
+            }
+            bots.shutdown();
+            bots.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d clients, window %d: %d moves in %.1f s, %.0f moves/s%n",
+                    clients, window, server.getMoves(), elapsed, server.getMoves() / elapsed);
+            System.out.println("client: " + replies.summary());
+            System.out.println("server: " + server.getLatency().summary());
+        }
+    }
+
+    /**
+     * Plays random games on the server at port until deadline, one "play"
+     * command per move. The bot plays each game on a local copy first, the
+     * same way the server plays it, and then sends its commands window at
+     * a time; the latency of a command is from sending it to its reply.
+     */
+    private static void playBot(int port, long seed, long deadline, int window,
+                                LatencyHistogram replies) {
+        Random random = new Random(seed);
+        int[] legal = new int[Move.MAX_MOVES];
+        MoveCache clicks = new MoveCache(8);
+        List<String> commands = new ArrayList<>();
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     s.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                     s.getOutputStream(), StandardCharsets.US_ASCII))) {
+            s.setTcpNoDelay(true);
+            while (System.nanoTime() < deadline) {
+                commands.clear();
+                commands.add("new");
+                String id = send(in, out, commands, 0, 1, replies)[0].substring(3);
+                commands.clear();
+                Checkers game = new Checkers();
+                for (int ply = 0; ply < MAX_GAME_PLIES; ply++) {
+                    int n = game.generateMoves(legal);
+                    if (n == 0 || game.checkWinner() != 0) {
+                        break;
+                    }
+                    int move = legal[random.nextInt(n)];
+                    //a click on the last square may stand for an earlier jump
+                    move = clicks.get(game).getMove(Move.from(move), Move.to(move));
+                    int fr = Bitboard.row(Move.from(move));
+                    int fc = Bitboard.col(Move.from(move));
+                    int tr = Bitboard.row(Move.to(move));
+                    int tc = Bitboard.col(Move.to(move));
+                    commands.add("play " + id + " " + fr + " " + fc + " " + tr + " " + tc);
+                    game.makeMove(move);
+                }
+                commands.add("end " + id);
+                for (int i = 0; i < commands.size(); i += window) {
+                    for (String reply : send(in, out, commands, i,
+                            Math.min(i + window, commands.size()), replies)) {
+                        if (!reply.startsWith("ok")) {
+                            throw new IllegalStateException(reply);
+                        }
+                    }
+                }
+            }
+            out.write("quit\n");
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("bot " + seed + " failed: " + e);
+        }
+    }
+
+    //sends commands from to to at once and returns their replies
+    private static String[] send(BufferedReader in, Writer out, List<String> commands,
+                                 int from, int to, LatencyHistogram replies)
+            throws IOException {
+        long start = System.nanoTime();
+        for (int i = from; i < to; i++) {
+            out.write(commands.get(i));
+            out.write('\n');
+        }
+        out.flush();
+        String[] read = new String[to - from];
+        for (int i = 0; i < read.length; i++) {
+            read[i] = in.readLine();
+            if (read[i] == null) {
+                throw new IOException("server closed the connection");
+            }
+            replies.record(System.nanoTime() - start);
+        }
+        return read;
+    }
+}
@@ -0,0 +1,128 @@
+package org.cis1200.checkers;
+
+/**
+ * An immutable picture of a game at one moment, everything the view needs
+ * to draw it. GameController takes one after every change and hands it to
+ * the view, so the view never touches the Checkers model, which belongs to
+ * the controller's thread.
+ */
+public final class GameSnapshot {
+
+    private final int black;
+    private final int red;
+    private final int kings;
+    private final boolean blackToMove;
+    private final int winner;
+    private final int selected;
+    private final int movable;
+    private final int targets;
+    private final int ply;
+    private final int plies;
+    private final String message;
+    private final String busy;
+
+    /**
+     * @param selected the square of the selected piece, or -1
+     * @param ply      the ply shown, 0 for the start of the game
+     * @param plies    how many positions the game's history has
+     * @param message  a note about the last thing that happened, or null
+     * @param busy     what is being done in the background, or null
+     */
+    GameSnapshot(int black, int red, int kings, boolean blackToMove, int winner, int selected,
+                 int movable, int targets, int ply, int plies, String message, String busy) {
+        this.black = black;
+        this.red = red;
+        this.kings = kings;
+        this.blackToMove = blackToMove;
+        this.winner = winner;
+        this.selected = selected;
+        this.movable = movable;
+        this.targets = targets;
+        this.ply = ply;
+        this.plies = plies;
+        this.message = message;
+        this.busy = busy;
+    }
+
+    /**
+     * Returns the piece on row r, column c, with the same codes as
+     * Checkers.getPlayer.
+     */
+    public int getPlayer(int r, int c) {
+        int s = Bitboard.square(r, c);
+        if (s < 0) {
+            return 0;
+        }
+        int king = (kings >>> s & 1) * 2;
+        if ((black >>> s & 1) != 0) {
+            return 1 + king;
+        }
+        if ((red >>> s & 1) != 0) {
+            return 2 + king;
+        }
+        return 0;
+    }
+
+    public boolean getCurrentPlayer() {
+        return blackToMove;
+    }
+
+    /**
+     * Returns 1 if black has won, 2 if red has, or 0.
+     */
+    public int getWinner() {
+        return winner;
+    }
+
+    public int getNumBlack() {
+        return Integer.bitCount(black);
+    }
+
+    public int getNumWhite() {
+        return Integer.bitCount(red);
+    }
+
+    public boolean isSelected(int r, int c) {
+        return selected >= 0 && selected == Bitboard.square(r, c);
+    }
+
+    public boolean isMovable(int r, int c) {
+        int s = Bitboard.square(r, c);
+        return s >= 0 && (movable >>> s & 1) != 0;
+    }
+
+    /**
+     * Returns whether the selected piece can be moved to row r, column c.
+     */
+    public boolean isTarget(int r, int c) {
+        int s = Bitboard.square(r, c);
+        return s >= 0 && (targets >>> s & 1) != 0;
+    }
+
+    /**
+     * Returns the ply shown, 0 for the start of the game.
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * Returns how many positions the game's history has; the last one is
+     * at ply getPlies() - 1.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getBusy() {
+        return busy;
+    }
+
+    public boolean isBusy() {
+        return busy != null;
+    }
+}
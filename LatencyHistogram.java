@@ -0,0 +1,91 @@
+package org.cis1200.checkers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies so percentiles can be read off while many threads keep
+ * recording. Values are kept in buckets about 6% wide (16 per power of
+ * two), so a percentile is accurate to that much and recording is a
+ * single atomic increment.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 << SUB_BITS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency.
+     *
+     * @throws IllegalArgumentException if nanos is negative
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException();
+        }
+        counts.incrementAndGet(bucket(nanos));
+        if (nanos > max.get()) {
+            max.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    /**
+     * Returns the latency that p percent of the recorded ones do not
+     * exceed, rounded up to the top of its bucket, or 0 if nothing was
+     * recorded.
+     */
+    public long percentile(double p) {
+        long total = count();
+        long rank = (long) Math.ceil(total * p / 100);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(top(i), max.get());
+            }
+        }
+        return 0;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the usual percentiles in microseconds, such as
+     * "p50 12.5us p90 20.0us p99 41.0us p99.9 90.0us max 1200.0us".
+     */
+    public String summary() {
+        return String.format("p50 %.1fus p90 %.1fus p99 %.1fus p99.9 %.1fus max %.1fus",
+                percentile(50) / 1e3, percentile(90) / 1e3, percentile(99) / 1e3,
+                percentile(99.9) / 1e3, max.get() / 1e3);
+    }
+
+    private static int bucket(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        return ((e - SUB_BITS + 1) << SUB_BITS) + (int) (v >>> (e - SUB_BITS) & SUB_BUCKETS - 1);
+    }
+
+    private static long top(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long low = (long) (SUB_BUCKETS + (bucket & SUB_BUCKETS - 1)) << shift;
+        return low + (1L << shift) - 1;
+    }
+}
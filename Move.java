@@ -0,0 +1,59 @@
+package org.cis1200.checkers;
+
+/**
+ * Moves are packed into a single int so that move lists can be kept in
+ * plain int arrays and reused between calls without allocating.
+ * <p>
+ * Bits 0-4 hold the origin square and bits 5-9 the square the piece ends
+ * up on (see Bitboard for the square numbering). Bits 10-11 hold the
+ * direction of the first step and bit 12 is set for a jump. A jump
+ * captures every piece in its jump tree, which is recomputed from the
+ * position and the first direction when the move is played, so the
+ * packed form never exceeds 13 bits.
+ */
+public final class Move {
+
+    /** Upper bound on the number of legal moves in any position. */
+    public static final int MAX_MOVES = 128;
+
+    private static final int JUMP_FLAG = 1 << 12;
+
+    private Move() {
+    }
+
+    public static int step(int from, int to, int dir) {
+        return from | to << 5 | dir << 10;
+    }
+
+    public static int jump(int from, int to, int dir) {
+        return from | to << 5 | dir << 10 | JUMP_FLAG;
+    }
+
+    public static int from(int move) {
+        return move & 31;
+    }
+
+    public static int to(int move) {
+        return move >>> 5 & 31;
+    }
+
+    public static int direction(int move) {
+        return move >>> 10 & 3;
+    }
+
+    public static boolean isJump(int move) {
+        return (move & JUMP_FLAG) != 0;
+    }
+
+    /**
+     * Returns a readable form such as "(5, 0)-(4, 1)", with an x instead
+     * of the dash for jumps.
+     */
+    public static String toString(int move) {
+        int from = from(move);
+        int to = to(move);
+        return "(" + Bitboard.row(from) + ", " + Bitboard.col(from) + ")"
+                + (isJump(move) ? "x" : "-")
+                + "(" + Bitboard.row(to) + ", " + Bitboard.col(to) + ")";
+    }
+}
@@ -0,0 +1,267 @@
+package org.cis1200.checkers;
+
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The legal moves of recently seen positions, so controllers do not
+ * generate them again on every click and repaint.
+ * <p>
+ * Positions are kept in a fixed table of two-way sets indexed by the low
+ * bits of their Zobrist key. Each set holds its most recently used
+ * position first; a hit on the second moves it to the front, and a new
+ * position pushes the front one back and evicts the least recently used,
+ * so two busy positions that share a set do not keep evicting each other.
+ * A cached MoveSet answers which pieces can move, which squares can be
+ * clicked for a piece and which move a click stands for without searching
+ * the move list. One cache may be shared by any number of games and
+ * threads without locking: MoveSets never change, so a thread sees either
+ * a whole one or another thread's whole one, and openings that recur
+ * across games are generated once. Two threads updating the same set at
+ * once can lose an entry, which only costs generating it again.
+ * <p>
+ * Usage: {@code MoveCache <games>} plays that many random games and
+ * checks every click the cache resolves against Checkers.movePiece.
+ */
+public class MoveCache {
+
+    private static final ThreadLocal<int[]> BUFFER =
+            ThreadLocal.withInitial(() -> new int[Move.MAX_MOVES]);
+
+    private final MoveSet[] sets; // the two ways of set i at 2 * i and 2 * i + 1
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a cache with room for 2^log2Positions positions.
+     *
+     * @throws IllegalArgumentException if log2Positions is not between 1
+     *                                  and 24
+     */
+    public MoveCache(int log2Positions) {
+        if (log2Positions < 1 || log2Positions > 24) {
+            throw new IllegalArgumentException();
+        }
+        sets = new MoveSet[1 << log2Positions];
+        mask = (sets.length >> 1) - 1;
+    }
+
+    /**
+     * Returns the legal moves of the position game is in.
+     */
+    public MoveSet get(Checkers game) {
+        return get(game.getHash(), game.getBlackMask(), game.getRedMask(), game.getKingMask(),
+                game.getCurrentPlayer());
+    }
+
+    /**
+     * Returns the legal moves of a position given as masks, one bit per
+     * square as described in Bitboard.
+     */
+    public MoveSet get(int black, int red, int kings, boolean blackToMove) {
+        return get(Zobrist.hash(black, red, kings, blackToMove), black, red, kings, blackToMove);
+    }
+
+    private MoveSet get(long key, int black, int red, int kings, boolean blackToMove) {
+        int way = ((int) key & mask) << 1;
+        MoveSet recent = sets[way];
+        //positions can share a set, so check it is really this one
+        if (recent != null && recent.is(black, red, kings, blackToMove)) {
+            hits.increment();
+            return recent;
+        }
+        MoveSet older = sets[way + 1];
+        if (older != null && older.is(black, red, kings, blackToMove)) {
+            hits.increment();
+            sets[way] = older;
+            sets[way + 1] = recent;
+            return older;
+        }
+        misses.increment();
+        MoveSet set = new MoveSet(black, red, kings, blackToMove);
+        sets[way + 1] = recent;
+        sets[way] = set;
+        return set;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("usage: MoveCache <games>");
+            return;
+        }
+        //a black man with two jumps that both land on square 9: only the
+        //squares along each path tell them apart
+        Checkers game = new Checkers();
+        game.setPosition(1 << Bitboard.square(6, 3), 1 << Bitboard.square(5, 2)
+                | 1 << Bitboard.square(5, 4) | 1 << Bitboard.square(3, 2)
+                | 1 << Bitboard.square(3, 4), 0, true);
+        MoveCache cache = new MoveCache(10);
+        int wrong = check(cache, game);
+
+        int games = Integer.parseInt(args[0]);
+        Random random = new Random(1);
+        int[] legal = new int[Move.MAX_MOVES];
+        long clicks = 0;
+        for (int g = 0; g < games; g++) {
+            game.reset();
+            for (int ply = 0; ply < 200 && game.checkWinner() == 0; ply++) {
+                int n = game.generateMoves(legal);
+                if (n == 0) {
+                    break;
+                }
+                wrong += check(cache, game);
+                clicks++;
+                game.makeMove(legal[random.nextInt(n)]);
+            }
+        }
+        System.out.printf("%d positions checked, %d hits, %d misses, %d wrong%n", clicks + 1,
+                cache.getHits(), cache.getMisses(), wrong);
+    }
+
+    // returns how many clicks the cache resolves differently from movePiece
+    private static int check(MoveCache cache, Checkers game) {
+        MoveSet set = cache.get(game);
+        int wrong = 0;
+        for (int m = set.getMovableMask(); m != 0; m &= m - 1) {
+            int from = Integer.numberOfTrailingZeros(m);
+            for (int to = 0; to < 32; to++) {
+                Checkers model = new Checkers(game);
+                model.setPieceSelected(model.getPlayer(Bitboard.row(from), Bitboard.col(from)),
+                        Bitboard.row(from), Bitboard.col(from));
+                boolean target = (model.getTargetMask() >>> to & 1) != 0;
+                int move = set.getMove(from, to);
+                if (target != ((set.getTargetMask(from) >>> to & 1) != 0)
+                        || target != (move != 0)) {
+                    wrong++;
+                    continue;
+                }
+                if (target) {
+                    Checkers played = new Checkers(game);
+                    played.makeMove(move);
+                    model.movePiece(Bitboard.row(to), Bitboard.col(to));
+                    if (played.getBlackMask() != model.getBlackMask()
+                            || played.getRedMask() != model.getRedMask()
+                            || played.getKingMask() != model.getKingMask()) {
+                        wrong++;
+                    }
+                }
+            }
+        }
+        return wrong;
+    }
+
+    /**
+     * The legal moves of one position, grouped by the square they start
+     * from.
+     */
+    public static final class MoveSet {
+        private final int black;
+        private final int red;
+        private final int kings;
+        private final boolean blackToMove;
+        private final int[] moves;
+        private final int[] paths; // squares that can be clicked to make each move
+        private final byte[] first = new byte[33]; // moves of square s: first[s] to first[s + 1]
+        private final int[] targets = new int[32];
+        private final int movable;
+
+        private MoveSet(int black, int red, int kings, boolean blackToMove) {
+            this.black = black;
+            this.red = red;
+            this.kings = kings;
+            this.blackToMove = blackToMove;
+            int own = blackToMove ? black : red;
+            int opp = blackToMove ? red : black;
+            int[] buf = BUFFER.get();
+            int n = Bitboard.generateMoves(own, opp, kings, blackToMove, buf, 0);
+            moves = new int[n];
+            System.arraycopy(buf, 0, moves, 0, n);
+            //every square along a jump tree can be clicked to make that jump,
+            //which is how two jumps that land on the same square are told apart
+            paths = new int[n];
+            for (int i = 0; i < n; i++) {
+                paths[i] = Move.isJump(moves[i])
+                        ? Bitboard.jumpPath(Move.from(moves[i]), Move.direction(moves[i]), opp,
+                        ~(own | opp))
+                        : 1 << Move.to(moves[i]);
+            }
+            //generateMoves lists the moves square by square, in order
+            int m = 0;
+            int origins = 0;
+            for (int s = 0; s < 32; s++) {
+                first[s] = (byte) m;
+                while (m < n && Move.from(moves[m]) == s) {
+                    targets[s] |= paths[m];
+                    m++;
+                }
+                if (targets[s] != 0) {
+                    origins |= 1 << s;
+                }
+            }
+            first[32] = (byte) m;
+            movable = origins;
+        }
+
+        /**
+         * Returns the number of legal moves.
+         */
+        public int size() {
+            return moves.length;
+        }
+
+        /**
+         * Returns legal move i, packed as described in Move.
+         */
+        public int get(int i) {
+            return moves[i];
+        }
+
+        /**
+         * Returns the squares of the pieces that can move.
+         */
+        public int getMovableMask() {
+            return movable;
+        }
+
+        /**
+         * Returns the squares that can be clicked to move the piece on
+         * square from: the square each step goes to and every square along
+         * each jump tree. Returns 0 if the piece cannot move.
+         */
+        public int getTargetMask(int from) {
+            return from >= 0 && from < 32 ? targets[from] : 0;
+        }
+
+        /**
+         * Returns the legal move that a click on square to makes for the
+         * piece on square from, or 0 if there is none. When the paths of
+         * two jumps share the square, the first one generated wins, as it
+         * did in Checkers.movePiece.
+         */
+        public int getMove(int from, int to) {
+            if (to < 0 || to >= 32 || (getTargetMask(from) >>> to & 1) == 0) {
+                return 0;
+            }
+            for (int i = first[from] & 0xFF; i < (first[from + 1] & 0xFF); i++) {
+                if ((paths[i] >>> to & 1) != 0) {
+                    return moves[i];
+                }
+            }
+            return 0;
+        }
+
+        private boolean is(int black, int red, int kings, boolean blackToMove) {
+            return this.black == black && this.red == red && this.kings == kings
+                    && this.blackToMove == blackToMove;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package org.cis1200.checkers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal of the moves of any number of games, so a game
+ * survives a crash without saving the whole board after every move.
+ * <p>
+ * Attach {@link #listener} to a game and every move and every new
+ * position of it is appended as a small record tagged with the game's
+ * id: 11 bytes for a move, 22 for a position, each ending in a CRC-32.
+ * {@link #remove} forgets a game that is over, so it does not stay in
+ * the journal for good.
+ * Appending only copies the record into a buffer. A background thread
+ * writes the buffer out and forces it to disk, and every record appended
+ * while one force is running goes out with the next one, so many games
+ * share each fsync. {@link #awaitDurable} waits for a record to be on
+ * disk.
+ * <p>
+ * When the file has grown to twice its size after the last compaction,
+ * and past a size limit, it is compacted: rewritten as a single position
+ * record per game and renamed over the old file. Games keep appending
+ * while the new file is written.
+ * Opening a journal replays it to find where every game stands, stopping
+ * at the first incomplete or damaged record, which is where a crash cut
+ * the file off, or at a record that cannot be replayed, such as a move
+ * that is no longer legal; the file is cut off there too. {@link #recover}
+ * then puts a game back in that position.
+ */
+public class MoveJournal implements Closeable {
+
+    public static final long DEFAULT_COMPACT_BYTES = 1 << 20;
+
+    private static final byte POSITION = 1;
+    private static final byte MOVE = 2;
+    private static final byte REMOVE = 3;
+    private static final int POSITION_BYTES = 22; // type, game, 3 masks, side, crc
+    private static final int MOVE_BYTES = 11; // type, game, move, crc
+    private static final int REMOVE_BYTES = 9; // type, game, crc
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final Path file;
+    private final long compactBytes;
+    private final Thread committer;
+    private final CRC32 crc = new CRC32();
+
+    // everything below is guarded by lock
+    private final Object lock = new Object();
+    private FileChannel channel;
+    private ByteBuffer filling = ByteBuffer.allocate(BUFFER_BYTES);
+    private ByteBuffer flushing = ByteBuffer.allocate(BUFFER_BYTES);
+    private long appended; // records appended so far
+    private long durable; // records known to be on disk
+    private boolean closed;
+    private IOException failure;
+    private long snapshotBytes; // size of the file the last compaction wrote
+    // where each game stands after the records appended so far:
+    // {black, red, kings, 1 if black is to move}
+    private final Map<Integer, int[]> positions = new HashMap<>();
+
+    public MoveJournal(Path file) throws IOException {
+        this(file, DEFAULT_COMPACT_BYTES);
+    }
+
+    /**
+     * Opens the journal in file, creating it if needed, and replays it.
+     *
+     * @param compactBytes the file is compacted once it grows past this
+     */
+    public MoveJournal(Path file, long compactBytes) throws IOException {
+        this.file = file;
+        this.compactBytes = compactBytes;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long end = replay(ByteBuffer.wrap(Files.readAllBytes(file)));
+        snapshotBytes = (long) positions.size() * POSITION_BYTES;
+        channel.truncate(end);
+        channel.position(end);
+        committer = new Thread(this::commitLoop, "journal-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Returns a listener that journals the moves and positions of a game
+     * under gameId.
+     */
+    public GameListener listener(int gameId) {
+        return new GameListener() {
+            @Override
+            public void moved(Checkers game, int move) {
+                append(gameId, move, game);
+            }
+
+            @Override
+            public void positionChanged(Checkers game) {
+                append(gameId, -1, game);
+            }
+        };
+    }
+
+    /**
+     * Puts game into the position the journal has for gameId, or resets it
+     * if the journal has nothing for that game. Call this before attaching
+     * a listener to game, or the recovered position is journaled again.
+     *
+     * @return whether the journal had the game
+     */
+    public boolean recover(int gameId, Checkers game) {
+        int[] position;
+        synchronized (lock) {
+            position = positions.get(gameId);
+        }
+        if (position == null) {
+            game.reset();
+            return false;
+        }
+        game.setPosition(position[0], position[1], position[2], position[3] != 0);
+        return true;
+    }
+
+    /**
+     * Forgets gameId, such as when its game is over: recover finds nothing
+     * for it from now on, and compaction leaves it out. Detach the game's
+     * listener first, or its next move brings the game back.
+     */
+    public void remove(int gameId) {
+        synchronized (lock) {
+            if (!awaitRoom(REMOVE_BYTES)) {
+                return;
+            }
+            int start = filling.position();
+            filling.put(REMOVE).putInt(gameId);
+            crc.reset();
+            crc.update(filling.array(), start, REMOVE_BYTES - 4);
+            filling.putInt((int) crc.getValue());
+            positions.remove(gameId);
+            appended++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of records appended so far. Passing it to
+     * awaitDurable waits for all of them.
+     */
+    public long getAppended() {
+        synchronized (lock) {
+            return appended;
+        }
+    }
+
+    /**
+     * Waits until the first seq records are on disk.
+     *
+     * @throws IOException if writing the journal failed
+     */
+    public void awaitDurable(long seq) throws IOException, InterruptedException {
+        synchronized (lock) {
+            while (durable < seq && failure == null && committer.isAlive()) {
+                lock.wait();
+            }
+            if (failure != null) {
+                throw new IOException("journal could not be written", failure);
+            }
+        }
+    }
+
+    /**
+     * Writes out everything appended so far and closes the file.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Trace.record(Trace.ERROR, Trace.JOURNAL_FAILED, 0, 0);
+            }
+        }
+    }
+
+    /**
+     * Appends a move record, or a position record if move is -1, and
+     * remembers where the game now stands.
+     */
+    private void append(int gameId, int move, Checkers game) {
+        int size = move < 0 ? POSITION_BYTES : MOVE_BYTES;
+        synchronized (lock) {
+            if (!awaitRoom(size)) {
+                return;
+            }
+            int start = filling.position();
+            if (move < 0) {
+                filling.put(POSITION).putInt(gameId).putInt(game.getBlackMask())
+                        .putInt(game.getRedMask()).putInt(game.getKingMask())
+                        .put((byte) (game.getCurrentPlayer() ? 1 : 0));
+            } else {
+                filling.put(MOVE).putInt(gameId).putShort((short) move);
+            }
+            crc.reset();
+            crc.update(filling.array(), start, size - 4);
+            filling.putInt((int) crc.getValue());
+            positions.put(gameId, new int[] {game.getBlackMask(), game.getRedMask(),
+                game.getKingMask(), game.getCurrentPlayer() ? 1 : 0});
+            appended++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits, holding the lock, until the buffer has room for size more
+     * bytes, and returns whether a record can be appended at all.
+     */
+    private boolean awaitRoom(int size) {
+        if (closed || failure != null) {
+            return false;
+        }
+        //if the committer has fallen a whole buffer behind, wait for it
+        while (filling.remaining() < size && failure == null) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return failure == null;
+    }
+
+    private void commitLoop() {
+        while (true) {
+            long batch;
+            ByteBuffer out;
+            synchronized (lock) {
+                while (filling.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                if (filling.position() == 0) {
+                    lock.notifyAll();
+                    return; //closed, and everything is written
+                }
+                out = filling;
+                filling = flushing;
+                flushing = out;
+                batch = appended;
+                lock.notifyAll(); //appenders waiting for room can go on
+            }
+            try {
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                out.clear();
+                channel.force(false);
+                boolean full;
+                synchronized (lock) {
+                    durable = batch;
+                    //on growth, not size, or a journal of many games
+                    //would be compacted on every commit
+                    full = channel.size() >= Math.max(compactBytes, 2 * snapshotBytes);
+                    lock.notifyAll();
+                }
+                if (full) {
+                    compact();
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                Trace.record(Trace.ERROR, Trace.JOURNAL_FAILED, 0, 0);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replaces the file with one position record per game. Only taking the
+     * snapshot and swapping the files hold the lock; the new file is
+     * written and forced while games go on appending. Runs on the
+     * committer thread, the only one that writes the file.
+     */
+    private void compact() throws IOException {
+        ByteBuffer snapshot;
+        long batch;
+        synchronized (lock) {
+            //the records still in the buffer are part of the snapshot
+            filling.clear();
+            batch = appended;
+            snapshot = ByteBuffer.allocate(positions.size() * POSITION_BYTES);
+            for (Map.Entry<Integer, int[]> e : positions.entrySet()) {
+                int[] p = e.getValue();
+                int start = snapshot.position();
+                snapshot.put(POSITION).putInt(e.getKey()).putInt(p[0]).putInt(p[1])
+                        .putInt(p[2]).put((byte) p[3]);
+                crc.reset();
+                crc.update(snapshot.array(), start, POSITION_BYTES - 4);
+                snapshot.putInt((int) crc.getValue());
+            }
+            lock.notifyAll(); //appenders waiting for room can go on
+        }
+        snapshot.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (snapshot.hasRemaining()) {
+                out.write(snapshot);
+            }
+            out.force(false);
+        }
+        synchronized (lock) {
+            //records appended since the snapshot stay in the buffer and go
+            //to the new file with the next commit
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            channel.close();
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            snapshotBytes = channel.size();
+            durable = batch;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Replays the records in data into positions and returns the length of
+     * the part that is intact and can be replayed.
+     */
+    private long replay(ByteBuffer data) {
+        Checkers game = new Checkers();
+        int[] legal = new int[Move.MAX_MOVES];
+        while (data.remaining() > 0) {
+            int start = data.position();
+            byte type = data.get(start);
+            int size = type == POSITION ? POSITION_BYTES : type == MOVE ? MOVE_BYTES
+                    : type == REMOVE ? REMOVE_BYTES : 0;
+            if (size == 0 || data.remaining() < size) {
+                break;
+            }
+            crc.reset();
+            crc.update(data.array(), start, size - 4);
+            if (data.getInt(start + size - 4) != (int) crc.getValue()) {
+                break;
+            }
+            int gameId = data.getInt(start + 1);
+            if (type == POSITION) {
+                int[] p = {data.getInt(start + 5), data.getInt(start + 9),
+                    data.getInt(start + 13), data.get(start + 17)};
+                if ((p[0] & p[1]) != 0 || (p[2] & ~(p[0] | p[1])) != 0) {
+                    Trace.record(Trace.ERROR, Trace.JOURNAL_TRUNCATED, gameId, start);
+                    break;
+                }
+                positions.put(gameId, p);
+            } else if (type == REMOVE) {
+                positions.remove(gameId);
+            } else {
+                int move = data.getShort(start + 5) & 0xFFFF;
+                int[] p = positions.get(gameId);
+                if (p == null) {
+                    p = new int[] {Bitboard.INITIAL_BLACK, Bitboard.INITIAL_RED, 0, 1};
+                }
+                game.setPosition(p[0], p[1], p[2], p[3] != 0);
+                int n = game.generateMoves(legal);
+                int m = 0;
+                while (m < n && legal[m] != move) {
+                    m++;
+                }
+                if (m == n) {
+                    //written under other rules, perhaps: keep what came before
+                    Trace.record(Trace.ERROR, Trace.JOURNAL_TRUNCATED, gameId, start);
+                    break;
+                }
+                game.makeMove(move);
+                positions.put(gameId, new int[] {game.getBlackMask(), game.getRedMask(),
+                    game.getKingMask(), game.getCurrentPlayer() ? 1 : 0});
+            }
+            data.position(start + size);
+        }
+        return data.position();
+    }
+}
@@ -0,0 +1,134 @@
+package org.cis1200.checkers;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opening moves and how they have done, read from a file written by
+ * OpeningBookBuilder.
+ * <p>
+ * The file is a 16-byte header followed by one 24-byte record per
+ * position and move that occurred in the corpus: the position's Zobrist
+ * key, the move, the number of games it was played in and how many of
+ * those the side that played it won and drew. Records are sorted by key
+ * and then move, so the moves of a position are found by binary search
+ * straight in the memory-mapped file; opening a book reads nothing but
+ * the header.
+ */
+public class OpeningBook {
+
+    static final int MAGIC = 0x434B424B; // "CKBK"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 24;
+
+    private final MappedByteBuffer data;
+    private final int size; // number of records
+    private final int minGames;
+
+    /**
+     * Opens the book in file.
+     *
+     * @param minGames moves played in fewer games than this are ignored
+     */
+    public OpeningBook(Path file, int minGames) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("opening book is too large to map: " + file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.capacity() < HEADER_BYTES || data.getInt(0) != MAGIC
+                || data.getInt(4) != VERSION
+                || (long) data.getInt(8) * RECORD_BYTES + HEADER_BYTES != data.capacity()) {
+            throw new IOException("not an opening book: " + file);
+        }
+        size = data.getInt(8);
+        this.minGames = minGames;
+    }
+
+    /**
+     * Returns the number of position and move records in the book.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the book move for the position of game: the one played in
+     * the most games, then the one with the best score. Returns 0 if the
+     * book has no legal move for the position with at least minGames
+     * games.
+     */
+    public int bestMove(Checkers game) {
+        long key = game.getHash();
+        int best = 0;
+        long bestGames = 0;
+        long bestPoints = 0;
+        for (int i = first(key); i < size && key(i) == key; i++) {
+            int at = HEADER_BYTES + i * RECORD_BYTES;
+            int move = data.getInt(at + 8);
+            long games = data.getInt(at + 12) & 0xFFFFFFFFL;
+            long points = 2 * (data.getInt(at + 16) & 0xFFFFFFFFL)
+                    + (data.getInt(at + 20) & 0xFFFFFFFFL);
+            if (games >= minGames && (games > bestGames
+                    || (games == bestGames && points > bestPoints))) {
+                best = move;
+                bestGames = games;
+                bestPoints = points;
+            }
+        }
+        return best != 0 && isLegal(game, best) ? best : 0;
+    }
+
+    /**
+     * Returns the number of games in which move was played from the
+     * position of game.
+     */
+    public long getGames(Checkers game, int move) {
+        long key = game.getHash();
+        for (int i = first(key); i < size && key(i) == key; i++) {
+            int at = HEADER_BYTES + i * RECORD_BYTES;
+            if (data.getInt(at + 8) == move) {
+                return data.getInt(at + 12) & 0xFFFFFFFFL;
+            }
+        }
+        return 0;
+    }
+
+    private long key(int i) {
+        return data.getLong(HEADER_BYTES + i * RECORD_BYTES);
+    }
+
+    /**
+     * Returns the first record whose key is not less than key.
+     */
+    private int first(long key) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    //two positions can share a key, so check the move is really playable
+    private static boolean isLegal(Checkers game, int move) {
+        int[] moves = new int[Move.MAX_MOVES];
+        int n = game.generateMoves(moves);
+        for (int i = 0; i < n; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
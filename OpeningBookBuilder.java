@@ -0,0 +1,179 @@
+package org.cis1200.checkers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiles an opening book from a corpus of games, for OpeningBook.
+ * <p>
+ * Every game is played through Checkers up to a maximum ply, and for each
+ * position on the way the builder counts how often each move was played
+ * and how the games went for the side that played it. The counts are then
+ * sorted by position key and written out in the format OpeningBook maps.
+ * <p>
+ * Usage: {@code OpeningBookBuilder <book> <max ply> <corpus>...}, where
+ * each corpus file is a PDN file (ending in .pdn) or a GameArchive.
+ */
+public class OpeningBookBuilder {
+
+    private final int maxPly;
+    // per position key: {number of moves, then move, games, wins, draws
+    // for each move}
+    private final Map<Long, int[]> positions = new HashMap<>();
+    private long records;
+
+    public OpeningBookBuilder(int maxPly) {
+        this.maxPly = maxPly;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("usage: OpeningBookBuilder <book> <max ply> <corpus>...");
+            return;
+        }
+        OpeningBookBuilder builder = new OpeningBookBuilder(Integer.parseInt(args[1]));
+        long start = System.nanoTime();
+        long games = 0;
+        for (int i = 2; i < args.length; i++) {
+            Path corpus = Paths.get(args[i]);
+            if (args[i].endsWith(".pdn")) {
+                games += new PdnReader(Runtime.getRuntime().availableProcessors())
+                        .read(corpus, game -> {
+                            if (game.isValid()) {
+                                builder.add(game);
+                            }
+                        });
+            } else {
+                try (GameArchive archive = new GameArchive(corpus)) {
+                    Checkers game = new Checkers();
+                    int[] moves = new int[GameArchive.MAX_GAME_LENGTH];
+                    for (long id = 0; id < archive.size(); id++) {
+                        int n = archive.getMoves(id, moves);
+                        archive.load(id, 0, game);
+                        builder.add(game, moves, n, archive.getResult(id));
+                    }
+                    games += archive.size();
+                }
+            }
+        }
+        builder.write(Paths.get(args[0]));
+        System.out.printf("%d games, %d book records in %.2f s%n", games, builder.records,
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    public void add(PdnGame game) {
+        Checkers start = new Checkers();
+        game.replay(start, 0);
+        add(start, game.getMoves(), game.getMoveCount(), game.getResult());
+    }
+
+    /**
+     * Adds a game that starts from the position of game and continues
+     * with the first n moves of moves. The game is left at the last ply
+     * that was added.
+     *
+     * @param result one of the GameArchive result codes
+     */
+    public void add(Checkers game, int[] moves, int n, int result) {
+        int plies = Math.min(n, maxPly);
+        long[] keys = new long[plies];
+        boolean[] black = new boolean[plies];
+        for (int i = 0; i < plies; i++) {
+            keys[i] = game.getHash();
+            black[i] = game.getCurrentPlayer();
+            game.makeMove(moves[i]);
+        }
+        synchronized (positions) {
+            for (int i = 0; i < plies; i++) {
+                boolean won = result == (black[i] ? GameArchive.BLACK_WON : GameArchive.RED_WON);
+                count(keys[i], moves[i], won, result == GameArchive.DRAWN);
+            }
+        }
+    }
+
+    private void count(long key, int move, boolean won, boolean drawn) {
+        int[] entry = positions.get(key);
+        if (entry == null) {
+            entry = new int[1 + 4];
+            positions.put(key, entry);
+        }
+        int i = 1;
+        while (i < 1 + 4 * entry[0] && entry[i] != move) {
+            i += 4;
+        }
+        if (i == 1 + 4 * entry[0]) {
+            if (i == entry.length) {
+                entry = Arrays.copyOf(entry, entry.length + 4 * 2);
+                positions.put(key, entry);
+            }
+            entry[0]++;
+            entry[i] = move;
+            records++;
+        }
+        entry[i + 1]++;
+        entry[i + 2] += won ? 1 : 0;
+        entry[i + 3] += drawn ? 1 : 0;
+    }
+
+    /**
+     * Writes the book to file, through a temporary file that is then
+     * renamed over it.
+     */
+    public void write(Path file) throws IOException {
+        if (records * OpeningBook.RECORD_BYTES + OpeningBook.HEADER_BYTES > Integer.MAX_VALUE) {
+            throw new IOException("too many positions for one book; lower the maximum ply");
+        }
+        long[] keys = new long[positions.size()];
+        int k = 0;
+        for (long key : positions.keySet()) {
+            keys[k++] = key;
+        }
+        Arrays.sort(keys);
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+            buf.putInt(OpeningBook.MAGIC).putInt(OpeningBook.VERSION).putInt((int) records)
+                    .putInt(maxPly);
+            for (long key : keys) {
+                int[] entry = positions.get(key);
+                //moves of one position in ascending order
+                long[] order = new long[entry[0]];
+                for (int m = 0; m < entry[0]; m++) {
+                    order[m] = (long) entry[1 + 4 * m] << 32 | m;
+                }
+                Arrays.sort(order);
+                for (long o : order) {
+                    int i = 1 + 4 * (int) o;
+                    if (buf.remaining() < OpeningBook.RECORD_BYTES) {
+                        flush(buf, out);
+                    }
+                    buf.putLong(key).putInt(entry[i]).putInt(entry[i + 1])
+                            .putInt(entry[i + 2]).putInt(entry[i + 3]);
+                }
+            }
+            flush(buf, out);
+            out.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void flush(ByteBuffer buf, FileChannel out) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+}
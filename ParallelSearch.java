@@ -0,0 +1,109 @@
+package org.cis1200.checkers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs an Engine search on several threads at once, Lazy SMP style.
+ * <p>
+ * Every thread searches its own copy of the game with its own Engine, and
+ * all of them share one TranspositionTable. Helpers start their iterative
+ * deepening at staggered depths, so between them they fill the table with
+ * results the main search can cut off on. The main search decides when to
+ * stop, and the result of whichever thread finished the deepest iteration
+ * is returned.
+ * <p>
+ * With one thread this is exactly a single Engine search, so results are
+ * deterministic for a fixed depth.
+ */
+public class ParallelSearch implements AutoCloseable {
+
+    private final ForkJoinPool pool;
+    private final Engine[] engines;
+    private OpeningBook book;
+
+    public ParallelSearch(int threads) {
+        this(threads, new TranspositionTable(22, TranspositionTable.Replacement.DEPTH_PREFERRED));
+    }
+
+    /**
+     * @throws IllegalArgumentException if threads is less than 1
+     */
+    public ParallelSearch(int threads, TranspositionTable tt) {
+        if (threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        pool = new ForkJoinPool(threads);
+        engines = new Engine[threads];
+        for (int i = 0; i < threads; i++) {
+            engines[i] = new Engine(tt);
+            engines[i].setDepthSkew(i % 2); // half the helpers run a ply ahead
+        }
+    }
+
+    public int getThreads() {
+        return engines.length;
+    }
+
+    public void setTablebase(Tablebase tablebase) {
+        for (Engine engine : engines) {
+            engine.setTablebase(tablebase);
+        }
+    }
+
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+        engines[0].setOpeningBook(book);
+    }
+
+    public SearchResult search(Checkers game, long timeLimitMillis) {
+        return search(game, timeLimitMillis, Engine.MAX_PLY);
+    }
+
+    /**
+     * Searches game until maxDepth is reached or timeLimitMillis
+     * milliseconds have passed. The game itself is not touched.
+     */
+    public SearchResult search(Checkers game, long timeLimitMillis, int maxDepth) {
+        if (engines.length == 1) {
+            return engines[0].search(new Checkers(game), timeLimitMillis, maxDepth);
+        }
+        long start = System.nanoTime();
+        int bookMove = book == null ? 0 : book.bestMove(game);
+        if (bookMove != 0) {
+            return new SearchResult(bookMove, 0, 0, 0, System.nanoTime() - start, true);
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        List<ForkJoinTask<SearchResult>> helpers = new ArrayList<>();
+        for (int i = 1; i < engines.length; i++) {
+            Engine engine = engines[i];
+            Checkers copy = new Checkers(game);
+            engine.setStopSignal(stop);
+            helpers.add(pool.submit(() -> engine.search(copy, timeLimitMillis, maxDepth)));
+        }
+        engines[0].setStopSignal(stop);
+        Checkers copy = new Checkers(game);
+        SearchResult best = pool.submit(() -> engines[0].search(copy, timeLimitMillis, maxDepth))
+                .join();
+        stop.set(true);
+
+        long nodes = best.getNodes();
+        for (ForkJoinTask<SearchResult> helper : helpers) {
+            SearchResult result = helper.join();
+            nodes += result.getNodes();
+            if (result.getDepth() > best.getDepth() && result.getMove() != 0) {
+                best = result;
+            }
+        }
+        return new SearchResult(best.getMove(), best.getScore(), best.getDepth(), nodes,
+                System.nanoTime() - start, best.isFromBook());
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
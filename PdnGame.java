@@ -0,0 +1,101 @@
+package org.cis1200.checkers;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One game read from a PDN file: its tags, the position it starts from,
+ * its moves as packed Move values and its result.
+ * <p>
+ * A game whose text could not be read or which contains an illegal move
+ * has an error message; its moves are the legal ones before the error.
+ */
+public class PdnGame {
+
+    private final long number;
+    private final Map<String, String> tags;
+    private final int black;
+    private final int red;
+    private final int kings;
+    private final boolean blackToMove;
+    private final int[] moves;
+    private final int result;
+    private final String error;
+
+    PdnGame(long number, Map<String, String> tags, int black, int red, int kings,
+            boolean blackToMove, int[] moves, int result, String error) {
+        this.number = number;
+        this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+        this.black = black;
+        this.red = red;
+        this.kings = kings;
+        this.blackToMove = blackToMove;
+        this.moves = moves;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * Returns the position of the game in its file, counting from 0.
+     */
+    public long getNumber() {
+        return number;
+    }
+
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * Returns the value of a tag, or null if the game does not have it.
+     */
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    public int getMoveCount() {
+        return moves.length;
+    }
+
+    public int[] getMoves() {
+        return moves.clone();
+    }
+
+    /**
+     * Returns the result, one of the GameArchive result codes.
+     */
+    public int getResult() {
+        return result;
+    }
+
+    /**
+     * Returns what was wrong with the game, or null if nothing was.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * Puts game into the position after the first ply moves.
+     */
+    public void replay(Checkers game, int ply) {
+        if (ply < 0 || ply > moves.length) {
+            throw new IllegalArgumentException();
+        }
+        game.setPosition(black, red, kings, blackToMove);
+        for (int i = 0; i < ply; i++) {
+            game.makeMove(moves[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "game " + number + " " + tags + " " + moves.length + " moves"
+                + (error == null ? "" : ", " + error);
+    }
+}
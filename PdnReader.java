@@ -0,0 +1,607 @@
+package org.cis1200.checkers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Reads games in Portable Draughts Notation and checks every move
+ * against the rules.
+ * <p>
+ * A file is read through a channel in fixed-size chunks and cut into the
+ * text of single games as it goes, so any size of file is read in
+ * constant memory. Games are independent, so each one is parsed and
+ * played through on a pool of threads while the file is still being read;
+ * at most a few games per thread are waiting at any time.
+ * <p>
+ * PDN squares are numbered 1 to 32 from the side of the player who moves
+ * first, Black ("B"), which is our black, so PDN square n is square
+ * 32 - n in Bitboard's numbering. Moves are written as their origin and
+ * destination, with "-" for moves and "x" for jumps. A jump matches our
+ * legal jump from the same square that lands on the destination, or
+ * failing that, passes through it, since our captures always take the
+ * whole jump tree; if the text gives the squares in between, the first of
+ * them picks between jumps that start in different directions. Tags, including
+ * FEN, comments, variations, move numbers and NAGs are understood.
+ * <p>
+ * Usage: {@code PdnReader <file> [archive]} reads a file, prints how many
+ * games were valid and how fast it went, and appends the valid games to
+ * a GameArchive if one is given.
+ */
+public class PdnReader {
+
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int MAX_GAME_CHARS = 1 << 20;
+    private static final int GAMES_PER_THREAD = 4;
+
+    private final int threads;
+
+    public PdnReader(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Reads every game in file and passes it to consumer, which is called
+     * from the reader's threads and in no particular order; use
+     * PdnGame.getNumber to put games back in file order.
+     *
+     * @return the number of games read
+     */
+    public long read(Path file, Consumer<PdnGame> consumer) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore waiting = new Semaphore(threads * GAMES_PER_THREAD);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        AtomicLong games = new AtomicLong();
+        Splitter splitter = new Splitter(text -> {
+            long number = games.getAndIncrement();
+            waiting.acquireUninterruptibly();
+            pool.execute(() -> {
+                try {
+                    consumer.accept(parse(text, number));
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    waiting.release();
+                }
+            });
+        });
+        try {
+            readChars(file, splitter);
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return games.get();
+    }
+
+    private static void readChars(Path file, Splitter splitter) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_BYTES);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(bytes) < 0;
+                bytes.flip();
+                decoder.decode(bytes, chars, eof);
+                if (eof) {
+                    decoder.flush(chars);
+                }
+                bytes.compact();
+                chars.flip();
+                while (chars.hasRemaining()) {
+                    splitter.accept(chars.get());
+                }
+                chars.clear();
+            }
+        }
+        splitter.finish();
+    }
+
+    /**
+     * Cuts a stream of characters into the text of single games. A game
+     * ends with its result token, or where the tags of the next game start
+     * if it has none.
+     */
+    private static final class Splitter {
+        private final Consumer<String> games;
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder token = new StringBuilder();
+        private boolean inTag;
+        private boolean inQuote;
+        private boolean inComment;
+        private boolean sawMoves;
+
+        Splitter(Consumer<String> games) {
+            this.games = games;
+        }
+
+        void accept(char c) {
+            if (c == '\uFEFF') {
+                return; // byte order mark
+            }
+            if (inComment) {
+                text.append(c);
+                inComment = c != '}';
+            } else if (inTag) {
+                text.append(c);
+                if (c == '"') {
+                    inQuote = !inQuote;
+                } else if (c == ']' && !inQuote) {
+                    inTag = false;
+                }
+            } else if (c == '[' || c == '{' || Character.isWhitespace(c)) {
+                endToken();
+                if (c == '[' && sawMoves) {
+                    endGame(); //the previous game had no result
+                }
+                text.append(c);
+                inTag = c == '[';
+                inComment = c == '{';
+            } else {
+                text.append(c);
+                token.append(c);
+            }
+            //a game this long is broken; hand it over rather than grow forever
+            if (text.length() > MAX_GAME_CHARS) {
+                endGame();
+            }
+        }
+
+        void finish() {
+            endToken();
+            endGame();
+        }
+
+        private void endToken() {
+            if (token.length() == 0) {
+                return;
+            }
+            //results are "*", "1-0" and the like, or "1/2-1/2"
+            int length = token.length();
+            if ((length == 1 || length == 3 || length == 7) && result(token.toString()) >= 0) {
+                endGame();
+            } else {
+                sawMoves = true;
+            }
+            token.setLength(0);
+        }
+
+        private void endGame() {
+            String game = text.toString().trim();
+            text.setLength(0);
+            token.setLength(0);
+            sawMoves = false;
+            inTag = false;
+            inQuote = false;
+            inComment = false;
+            if (!game.isEmpty()) {
+                games.accept(game);
+            }
+        }
+    }
+
+    /**
+     * Returns the result a PDN result token stands for, or -1 if it is not
+     * one. The first score is Black's.
+     */
+    static int result(String token) {
+        switch (token) {
+            case "1-0":
+            case "2-0":
+                return GameArchive.BLACK_WON;
+            case "0-1":
+            case "0-2":
+                return GameArchive.RED_WON;
+            case "1/2-1/2":
+            case "1-1":
+                return GameArchive.DRAWN;
+            case "*":
+                return GameArchive.UNKNOWN;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Parses the text of one game and plays its moves through the rules.
+     *
+     * @param number the position of the game in its file
+     */
+    public static PdnGame parse(String text, long number) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        Checkers game = new Checkers();
+        int[] legal = new int[Move.MAX_MOVES];
+        int[] moves = new int[64];
+        int n = 0;
+        int result = GameArchive.UNKNOWN;
+        int startBlack = Bitboard.INITIAL_BLACK;
+        int startRed = Bitboard.INITIAL_RED;
+        int startKings = 0;
+        boolean startBlackToMove = true;
+        boolean started = false; // whether the start position is settled
+        String error = null;
+
+        int i = 0;
+        int length = text.length();
+        while (i < length && error == null) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '[') {
+                //[Name "value"]
+                int close = i + 1;
+                boolean quote = false;
+                StringBuilder value = new StringBuilder();
+                while (close < length && (quote || text.charAt(close) != ']')) {
+                    char t = text.charAt(close);
+                    if (t == '"') {
+                        quote = !quote;
+                    } else if (quote) {
+                        if (t == '\\' && close + 1 < length) {
+                            t = text.charAt(++close);
+                        }
+                        value.append(t);
+                    }
+                    close++;
+                }
+                String name = text.substring(i + 1, close).trim().split("[\\s\"]", 2)[0];
+                tags.put(name, value.toString());
+                i = close + 1;
+            } else if (c == '{') {
+                int close = text.indexOf('}', i);
+                i = close < 0 ? length : close + 1;
+            } else if (c == '(') {
+                int depth = 0;
+                do {
+                    char t = text.charAt(i++);
+                    depth += t == '(' ? 1 : t == ')' ? -1 : 0;
+                } while (depth > 0 && i < length);
+            } else {
+                int end = i;
+                while (end < length && !Character.isWhitespace(text.charAt(end))
+                        && "[{(".indexOf(text.charAt(end)) < 0) {
+                    end++;
+                }
+                String token = text.substring(i, end);
+                i = end;
+
+                if (!started) {
+                    started = true;
+                    String fen = tags.get("FEN");
+                    if (fen != null) {
+                        int[] position = fen(fen);
+                        if (position == null) {
+                            error = "bad FEN " + fen;
+                            break;
+                        }
+                        startBlack = position[0];
+                        startRed = position[1];
+                        startKings = position[2];
+                        startBlackToMove = position[3] != 0;
+                    }
+                    game.setPosition(startBlack, startRed, startKings, startBlackToMove);
+                }
+                if (result(token) >= 0) {
+                    result = result(token);
+                    continue;
+                }
+                int last = token.length();
+                while (last > 0
+                        && (token.charAt(last - 1) == '!' || token.charAt(last - 1) == '?')) {
+                    last--;
+                }
+                //skip a move number, which may be stuck to the move as in "12.11-15"
+                token = token.substring(token.lastIndexOf('.', last - 1) + 1, last);
+                if (token.isEmpty() || token.charAt(0) == '$') {
+                    continue;
+                }
+                int move = match(game, token, legal);
+                if (move < 0) {
+                    error = "illegal move " + token + " at ply " + n;
+                    break;
+                }
+                game.makeMove(move);
+                if (n == moves.length) {
+                    moves = Arrays.copyOf(moves, n * 2);
+                }
+                moves[n++] = move;
+            }
+        }
+        if (!started && error == null && tags.containsKey("FEN")) {
+            int[] position = fen(tags.get("FEN"));
+            if (position == null) {
+                error = "bad FEN " + tags.get("FEN");
+            } else {
+                startBlack = position[0];
+                startRed = position[1];
+                startKings = position[2];
+                startBlackToMove = position[3] != 0;
+            }
+        }
+        String resultTag = tags.get("Result");
+        if (resultTag != null && result(resultTag) >= 0) {
+            result = result(resultTag);
+        }
+        return new PdnGame(number, tags, startBlack, startRed, startKings, startBlackToMove,
+                Arrays.copyOf(moves, n), result, error);
+    }
+
+    /**
+     * Returns the legal move of game that a PDN move such as "11-15" or
+     * "15x24x31" stands for, or -1 if there is none.
+     */
+    static int match(Checkers game, String token, int[] legal) {
+        //the first and last numbers are the origin and destination, and the
+        //second, if there are more than two, is where a jump lands first
+        int from = -1;
+        int first = -1;
+        int to = -1;
+        boolean jump = false;
+        int number = 0;
+        int digits = 0;
+        for (int i = 0; i <= token.length(); i++) {
+            char c = i < token.length() ? token.charAt(i) : '-';
+            if (c >= '0' && c <= '9' && digits < 2) {
+                number = number * 10 + c - '0';
+                digits++;
+            } else if ((c == '-' || c == 'x') && digits > 0) {
+                int s = square(number);
+                if (s < 0) {
+                    return -1;
+                }
+                if (from < 0) {
+                    from = s;
+                } else if (to < 0) {
+                    to = s;
+                } else {
+                    first = first < 0 ? to : first;
+                    to = s;
+                }
+                jump |= c == 'x';
+                number = 0;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+        if (to < 0) {
+            return -1;
+        }
+        int own = game.getCurrentPlayer() ? game.getBlackMask() : game.getRedMask();
+        int opp = game.getCurrentPlayer() ? game.getRedMask() : game.getBlackMask();
+        int n = game.generateMoves(legal);
+        int best = -1;
+        int bestRank = 0;
+        for (int m = 0; m < n; m++) {
+            int move = legal[m];
+            if (Move.from(move) != from || Move.isJump(move) != jump) {
+                continue;
+            }
+            //prefer a move that ends on the destination over one that only
+            //passes through it, and one that starts the way the text says
+            int rank;
+            if (Move.to(move) == to) {
+                rank = 2;
+            } else if (jump && (Bitboard.jumpPath(from, Move.direction(move), opp, ~(own | opp))
+                    >>> to & 1) != 0) {
+                rank = 1;
+            } else {
+                continue;
+            }
+            if (first >= 0 && Bitboard.jump(Move.direction(move), from) == first) {
+                rank += 2;
+            }
+            if (rank > bestRank) {
+                best = move;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the square in Bitboard's numbering for PDN square n, or -1
+     * if there is no such square.
+     */
+    static int square(int n) {
+        return n >= 1 && n <= 32 ? 32 - n : -1;
+    }
+
+    /**
+     * Reads a FEN tag such as "B:W18,24,K10:B12,16,K22" or with ranges
+     * such as "W:W21-32:B1-12". Returns {black, red, kings, 1 if black is
+     * to move}, or null if it is not valid.
+     */
+    static int[] fen(String fen) {
+        //batch jobs read millions of these, so tags in the usual compact
+        //form are scanned by hand; anything else, with spaces or signs or
+        //odd separators, goes through the general reader
+        int[] position = {0, 0, 0, 0};
+        int end = fen.length();
+        if (end > 0 && fen.charAt(end - 1) == '.') {
+            end--;
+        }
+        if (end == 0 || "BW".indexOf(fen.charAt(0)) < 0) {
+            return splitFen(fen);
+        }
+        position[3] = fen.charAt(0) == 'B' ? 1 : 0;
+        int i = 1;
+        while (i < end) {
+            //a ':', then a colour, then pieces separated by commas
+            if (fen.charAt(i) != ':' || i + 1 == end || "BW".indexOf(fen.charAt(i + 1)) < 0) {
+                return splitFen(fen);
+            }
+            int colour = fen.charAt(i + 1) == 'B' ? 0 : 1;
+            i += 2;
+            while (i < end && fen.charAt(i) != ':') {
+                if (fen.charAt(i) == ',') {
+                    i++;
+                    continue;
+                }
+                boolean king = fen.charAt(i) == 'K';
+                if (king) {
+                    i++;
+                }
+                int start = i;
+                int first = 0;
+                while (i < end && i - start < 3 && isDigit(fen.charAt(i))) {
+                    first = first * 10 + fen.charAt(i++) - '0';
+                }
+                if (i == start) {
+                    return splitFen(fen);
+                }
+                int last = first;
+                if (i < end && fen.charAt(i) == '-') {
+                    start = ++i;
+                    last = 0;
+                    while (i < end && i - start < 3 && isDigit(fen.charAt(i))) {
+                        last = last * 10 + fen.charAt(i++) - '0';
+                    }
+                    if (i == start) {
+                        return splitFen(fen);
+                    }
+                }
+                if (i < end && fen.charAt(i) != ',' && fen.charAt(i) != ':') {
+                    return splitFen(fen);
+                }
+                for (int sq = first; sq <= last; sq++) {
+                    int s = square(sq);
+                    if (s < 0) {
+                        return null;
+                    }
+                    position[colour] |= 1 << s;
+                    if (king) {
+                        position[2] |= 1 << s;
+                    }
+                }
+            }
+        }
+        return checked(position);
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    // the general reader, which fen falls back on
+    private static int[] splitFen(String fen) {
+        String[] parts = fen.trim().replaceAll("\\.$", "").split(":");
+        if (parts.length < 1 || parts[0].length() != 1 || "BW".indexOf(parts[0].charAt(0)) < 0) {
+            return null;
+        }
+        int[] position = {0, 0, 0, parts[0].charAt(0) == 'B' ? 1 : 0};
+        try {
+            for (int p = 1; p < parts.length; p++) {
+                String part = parts[p].trim();
+                if (part.isEmpty() || "BW".indexOf(part.charAt(0)) < 0) {
+                    return null;
+                }
+                int colour = part.charAt(0) == 'B' ? 0 : 1;
+                for (String item : part.substring(1).split(",")) {
+                    item = item.trim();
+                    if (item.isEmpty()) {
+                        continue;
+                    }
+                    boolean king = item.charAt(0) == 'K';
+                    String[] range = (king ? item.substring(1) : item).split("-");
+                    if (range.length == 0) {
+                        return null; // "-" alone
+                    }
+                    int first = Integer.parseInt(range[0]);
+                    int last = range.length > 1 ? Integer.parseInt(range[1]) : first;
+                    for (int sq = first; sq <= last; sq++) {
+                        int s = square(sq);
+                        if (s < 0) {
+                            return null;
+                        }
+                        position[colour] |= 1 << s;
+                        if (king) {
+                            position[2] |= 1 << s;
+                        }
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return checked(position);
+    }
+
+    // returns position, or null if a square holds both colours or a man
+    // stands on the row where it would have been crowned
+    private static int[] checked(int[] position) {
+        int black = position[0];
+        int red = position[1];
+        int men = ~position[2];
+        if ((black & red) != 0 || (black & men & Bitboard.TOP_ROW) != 0
+                || (red & men & Bitboard.BOTTOM_ROW) != 0) {
+            return null;
+        }
+        return position;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("usage: PdnReader <file> [archive]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        GameArchive archive = args.length > 1 ? new GameArchive(Paths.get(args[1])) : null;
+        AtomicLong invalid = new AtomicLong();
+        AtomicLong plies = new AtomicLong();
+        long start = System.nanoTime();
+        long games = new PdnReader(Runtime.getRuntime().availableProcessors()).read(file, g -> {
+            plies.addAndGet(g.getMoveCount());
+            if (!g.isValid()) {
+                if (invalid.getAndIncrement() < 10) {
+                    System.out.println(g);
+                }
+            } else if (archive != null) {
+                Checkers c = new Checkers();
+                g.replay(c, 0);
+                try {
+                    archive.append(c, g.getMoves(), g.getMoveCount(), g.getResult());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (archive != null) {
+            archive.close();
+        }
+        System.out.printf("%d games (%d invalid), %d plies in %.2f s: %.0f games/s, %.1f MB/s%n",
+                games, invalid.get(), plies.get(), seconds, games / seconds,
+                file.toFile().length() / seconds / 1e6);
+    }
+}
@@ -0,0 +1,153 @@
+package org.cis1200.checkers;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes games in Portable Draughts Notation, one after another, so a
+ * file of any size is written in constant memory.
+ * <p>
+ * Squares are numbered as described in PdnReader. Jumps are written as
+ * their origin, the square the first jump lands on and the final square
+ * ("15x24x31"); our jumps capture a whole tree rather than follow one
+ * path, so the squares in between are not listed, but the first landing
+ * tells apart two jumps that end on the same square. A FEN tag is
+ * written for games that do not start from the initial position.
+ */
+public class PdnWriter implements Closeable {
+
+    private static final int LINE_LENGTH = 79;
+
+    private final BufferedWriter out;
+    private final StringBuilder line = new StringBuilder();
+
+    public PdnWriter(Path file) throws IOException {
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    public void write(PdnGame game) throws IOException {
+        Checkers start = new Checkers();
+        game.replay(start, 0);
+        write(game.getTags(), start, game.getMoves(), game.getMoveCount(), game.getResult());
+    }
+
+    /**
+     * Writes a game that starts from the position start is in now and
+     * continues with the first n moves of moves.
+     *
+     * @param tags   tags to write; Result and FEN are filled in
+     * @param result one of the GameArchive result codes
+     */
+    public void write(Map<String, String> tags, Checkers start, int[] moves, int n, int result)
+            throws IOException {
+        Map<String, String> all = new LinkedHashMap<>(tags);
+        all.put("Result", resultToken(result));
+        all.remove("FEN");
+        boolean blackToMove = start.getCurrentPlayer();
+        if (start.getBlackMask() != Bitboard.INITIAL_BLACK
+                || start.getRedMask() != Bitboard.INITIAL_RED
+                || start.getKingMask() != 0 || !blackToMove) {
+            all.put("FEN", fen(start.getBlackMask(), start.getRedMask(), start.getKingMask(),
+                    blackToMove));
+        }
+        for (Map.Entry<String, String> tag : all.entrySet()) {
+            out.write("[" + tag.getKey() + " \"" + tag.getValue().replace("\\", "\\\\")
+                    .replace("\"", "\\\"") + "\"]\n");
+        }
+        out.write('\n');
+
+        int moveNumber = 1;
+        for (int i = 0; i < n; i++) {
+            if (blackToMove) {
+                token(moveNumber + ".");
+            } else if (i == 0) {
+                token(moveNumber + "...");
+            }
+            token(moveText(moves[i]));
+            if (!blackToMove) {
+                moveNumber++;
+            }
+            blackToMove = !blackToMove;
+        }
+        token(resultToken(result));
+        out.write(line.toString());
+        out.write("\n\n");
+        line.setLength(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void token(String token) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + token.length() > LINE_LENGTH) {
+            out.write(line.toString());
+            out.write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(token);
+    }
+
+    /**
+     * Returns the PDN text of a move, such as "11-15" or "15x24x31".
+     */
+    static String moveText(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        if (!Move.isJump(move)) {
+            return pdnSquare(from) + "-" + pdnSquare(to);
+        }
+        int first = Bitboard.jump(Move.direction(move), from);
+        return pdnSquare(from) + (first == to ? "" : "x" + pdnSquare(first)) + "x" + pdnSquare(to);
+    }
+
+    /**
+     * Returns the PDN number of a square in Bitboard's numbering.
+     */
+    static int pdnSquare(int s) {
+        return 32 - s;
+    }
+
+    static String resultToken(int result) {
+        switch (result) {
+            case GameArchive.BLACK_WON:
+                return "1-0";
+            case GameArchive.RED_WON:
+                return "0-1";
+            case GameArchive.DRAWN:
+                return "1/2-1/2";
+            default:
+                return "*";
+        }
+    }
+
+    /**
+     * Returns the FEN tag value for a position, such as
+     * "B:W21,22,K30:B1,K5".
+     */
+    static String fen(int black, int red, int kings, boolean blackToMove) {
+        return (blackToMove ? "B" : "W") + ":W" + squares(red, kings) + ":B"
+                + squares(black, kings);
+    }
+
+    private static String squares(int pieces, int kings) {
+        StringBuilder sb = new StringBuilder();
+        //PDN numbers run the other way from ours, so go from the top bit down
+        for (int m = pieces; m != 0; m &= ~Integer.highestOneBit(m)) {
+            int s = 31 - Integer.numberOfLeadingZeros(m);
+            sb.append(sb.length() == 0 ? "" : ",").append((kings >>> s & 1) != 0 ? "K" : "")
+                    .append(pdnSquare(s));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package org.cis1200.checkers;
+
+/**
+ * Counts the leaf nodes of the game tree to a fixed depth ("perft").
+ * <p>
+ * The counts depend only on the rules, so they are the reference any
+ * change to move generation has to reproduce exactly: the same start
+ * position and depth must always give the same number.
+ * <p>
+ * Usage: {@code Perft <depth> [state file] [--divide]}. Without a state
+ * file the count starts from the initial position. With --divide the
+ * count below each legal move of the root is printed as well.
+ */
+public class Perft {
+
+    private final int[][] moves;
+
+    public Perft(int maxDepth) {
+        moves = new int[maxDepth + 1][Move.MAX_MOVES];
+    }
+
+    /**
+     * Returns the number of positions reached after exactly depth plies
+     * from game. Positions where the side to move has no moves end their
+     * line early and are not counted. The game is left unchanged.
+     */
+    public long count(Checkers game, int depth) {
+        return count(game, depth, 0);
+    }
+
+    private long count(Checkers game, int depth, int ply) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] list = moves[ply];
+        int n = game.generateMoves(list);
+        if (depth == 1) {
+            return n;
+        }
+        long nodes = 0;
+        for (int i = 0; i < n; i++) {
+            game.makeMove(list[i]);
+            nodes += count(game, depth - 1, ply + 1);
+            game.unmakeMove(list[i]);
+        }
+        return nodes;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("usage: Perft <depth> [state file] [--divide]");
+            return;
+        }
+        int depth = Integer.parseInt(args[0]);
+        boolean divide = false;
+        Checkers game = new Checkers();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--divide")) {
+                divide = true;
+            } else {
+                game.readStateFromFile(args[i]);
+            }
+        }
+
+        Perft perft = new Perft(depth);
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long nodes = perft.count(game, d);
+            long nanos = Math.max(System.nanoTime() - start, 1);
+            System.out.println("depth " + d + ": " + nodes + " nodes in " + nanos / 1_000_000
+                    + " ms (" + nodes * 1_000_000_000L / nanos / 1000 + " knps)");
+        }
+        if (divide && depth > 0) {
+            int[] root = new int[Move.MAX_MOVES];
+            int n = game.generateMoves(root);
+            for (int i = 0; i < n; i++) {
+                game.makeMove(root[i]);
+                System.out.println(Move.toString(root[i]) + ": " + perft.count(game, depth - 1));
+                game.unmakeMove(root[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.cis1200.checkers;
+
+/**
+ * Something that picks moves, such as an Engine at some depth or a random
+ * mover, so Tournament can play any two against each other. A player is
+ * only used by one thread at a time.
+ */
+public interface Player {
+
+    /**
+     * Called before each game. Players that use randomness take it from
+     * seed, so a game can be played again exactly.
+     */
+    void newGame(long seed);
+
+    /**
+     * Returns the move to play in game, which has at least one legal move.
+     * The game must be left as it was found.
+     */
+    int chooseMove(Checkers game);
+}
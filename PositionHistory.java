@@ -0,0 +1,121 @@
+package org.cis1200.checkers;
+
+import java.util.Arrays;
+
+/**
+ * The positions of a game, one per ply, for undo, redo and jumping to any
+ * ply in constant time.
+ * <p>
+ * Each position is packed into 13 bytes: the black, red and kings masks
+ * and the side to move, in flat arrays that double when full. A current
+ * ply marks where the game is; undo, redo and jump only move it, and
+ * recording a new position after an undo drops the positions that came
+ * after the current one, as in any editor.
+ */
+public class PositionHistory {
+
+    private int[] masks = new int[3 * 64]; // black, red, kings of each ply
+    private boolean[] blackToMove = new boolean[64];
+    private int size;
+    private int ply;
+
+    /**
+     * Starts a history whose first position is the one game is in.
+     */
+    public PositionHistory(Checkers game) {
+        clear(game);
+    }
+
+    /**
+     * Forgets every position and starts again from the one game is in.
+     */
+    public void clear(Checkers game) {
+        size = 0;
+        ply = 0;
+        put(0, game);
+        size = 1;
+    }
+
+    /**
+     * Records the position game is in as the ply after the current one,
+     * dropping any positions that were after it, and makes it current.
+     */
+    public void record(Checkers game) {
+        if (ply + 1 == blackToMove.length) {
+            masks = Arrays.copyOf(masks, masks.length * 2);
+            blackToMove = Arrays.copyOf(blackToMove, blackToMove.length * 2);
+        }
+        put(++ply, game);
+        size = ply + 1;
+    }
+
+    /**
+     * Returns the number of positions, the first one included.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the current ply, 0 for the first position.
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    public boolean canUndo() {
+        return ply > 0;
+    }
+
+    public boolean canRedo() {
+        return ply < size - 1;
+    }
+
+    /**
+     * Moves back one ply, if there is one.
+     *
+     * @return whether the current ply changed
+     */
+    public boolean undo() {
+        return canUndo() && jump(ply - 1);
+    }
+
+    /**
+     * Moves forward one ply, if there is one.
+     *
+     * @return whether the current ply changed
+     */
+    public boolean redo() {
+        return canRedo() && jump(ply + 1);
+    }
+
+    /**
+     * Makes ply p current.
+     *
+     * @return whether the current ply changed
+     * @throws IllegalArgumentException if there is no ply p
+     */
+    public boolean jump(int p) {
+        if (p < 0 || p >= size) {
+            throw new IllegalArgumentException();
+        }
+        boolean changed = p != ply;
+        ply = p;
+        return changed;
+    }
+
+    /**
+     * Puts game into the position of the current ply.
+     */
+    public void restore(Checkers game) {
+        game.setPosition(masks[3 * ply], masks[3 * ply + 1], masks[3 * ply + 2],
+                blackToMove[ply]);
+    }
+
+    private void put(int p, Checkers game) {
+        masks[3 * p] = game.getBlackMask();
+        masks[3 * p + 1] = game.getRedMask();
+        masks[3 * p + 2] = game.getKingMask();
+        blackToMove[p] = game.getCurrentPlayer();
+    }
+}
@@ -0,0 +1,66 @@
+package org.cis1200.checkers;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A TraceSink that keeps the most recent events in fixed-size arrays,
+ * overwriting the oldest once it is full. Recording allocates nothing.
+ */
+public class RingBufferSink implements TraceSink {
+
+    private final long[] times;
+    private final int[] levels;
+    private final int[] events;
+    private final long[] as;
+    private final long[] bs;
+    private final int mask;
+    private long count; // events recorded so far
+
+    /**
+     * @param log2Capacity the buffer holds 2^log2Capacity events
+     */
+    public RingBufferSink(int log2Capacity) {
+        int capacity = 1 << log2Capacity;
+        times = new long[capacity];
+        levels = new int[capacity];
+        events = new int[capacity];
+        as = new long[capacity];
+        bs = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    @Override
+    public synchronized void record(int level, int event, long a, long b) {
+        int i = (int) count++ & mask;
+        times[i] = System.nanoTime();
+        levels[i] = level;
+        events[i] = event;
+        as[i] = a;
+        bs[i] = b;
+    }
+
+    /**
+     * Returns the events still in the buffer as text, oldest first.
+     */
+    public synchronized List<String> snapshot() {
+        long first = Math.max(0, count - mask - 1);
+        List<String> lines = new ArrayList<>();
+        for (long n = first; n < count; n++) {
+            int i = (int) n & mask;
+            lines.add(times[i] + " " + levels[i] + " " + Trace.describe(events[i], as[i], bs[i]));
+        }
+        return lines;
+    }
+
+    public void dump(PrintStream out) {
+        for (String line : snapshot()) {
+            out.println(line);
+        }
+    }
+
+    public synchronized void clear() {
+        count = 0;
+    }
+}
@@ -23,8 +23,8 @@ import java.awt.event.ActionListener;
  * In a Model-View-Controller framework, Game initializes the view,
  * implements a bit of controller functionality through the reset
  * button, and then instantiates a GameBoard. The GameBoard will
- * handle the rest of the game's view and controller functionality, and
- * it will instantiate a Checkers object to serve as the game's model.
+ * handle the rest of the game's view, and it will start a GameController,
+ * which owns a Checkers object that serves as the game's model.
  */
 public class RunCheckers implements Runnable {
 
@@ -39,12 +39,17 @@ public class RunCheckers implements Runnable {
         frame.add(status_panel, BorderLayout.SOUTH);
         final JLabel status = new JLabel("Setting up...");
         status_panel.add(status);
+        final JProgressBar progress = new JProgressBar();
+        status_panel.add(progress);
 
         final JLabel blackPieces = new JLabel("Setting up...");
         final JLabel whitePieces = new JLabel("Setting up...");
 
         // Game board
-        final GameBoard board = new GameBoard(status, blackPieces, whitePieces);
+        final JSlider history = new JSlider();
+        history.setToolTipText("Scrub through the moves of the game");
+        final GameBoard board = new GameBoard(status, blackPieces, whitePieces, progress,
+                history);
         frame.add(board, BorderLayout.CENTER);
 
         // Top panel
@@ -52,7 +57,7 @@ public class RunCheckers implements Runnable {
         frame.add(control_panel, BorderLayout.NORTH);
         JPanel panel = new JPanel();
         panel.setSize(450, 200);
-        GridLayout layout = new GridLayout(3, 2);
+        GridLayout layout = new GridLayout(5, 2);
         layout.setHgap(10);
         layout.setVgap(10);
         panel.setLayout(layout);
@@ -60,6 +65,11 @@ public class RunCheckers implements Runnable {
         final JButton instructions = new JButton("Instructions");
         final JButton save = new JButton("Save");
         final JButton load = new JButton("Load");
+        final JButton undo = new JButton("Undo");
+        final JButton redo = new JButton("Redo");
+        final JComboBox<String> opponent = new JComboBox<>(new String[] {
+            "Two players", "Computer plays Red", "Computer plays Black"
+        });
         reset.addActionListener(e -> board.reset());
         panel.add(reset);
         panel.add(instructions);
@@ -67,6 +77,16 @@ public class RunCheckers implements Runnable {
         save.addActionListener(e -> board.save());
         panel.add(load);
         load.addActionListener(e -> board.load());
+        panel.add(undo);
+        undo.addActionListener(e -> board.undo());
+        panel.add(redo);
+        redo.addActionListener(e -> board.redo());
+        panel.add(opponent);
+        opponent.addActionListener(e -> {
+            int choice = opponent.getSelectedIndex();
+            board.setComputerPlayer(choice == 1 ? 2 : choice == 2 ? 1 : 0);
+        });
+        panel.add(history);
         panel.add(blackPieces);
         panel.add(whitePieces);
         control_panel.add(panel);
@@ -85,8 +105,8 @@ public class RunCheckers implements Runnable {
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setVisible(true);
 
-        // Start the game
-        board.reset();
+        // Start the game, or go on with the one that was being played
+        board.resume();
     }
 
     public static void createFrame() {
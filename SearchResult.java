@@ -0,0 +1,76 @@
+package org.cis1200.checkers;
+
+/**
+ * The outcome of one Engine search: the move to play and how much work
+ * went into finding it.
+ */
+public class SearchResult {
+
+    private final int move;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long elapsedNanos;
+    private final boolean fromBook;
+
+    public SearchResult(int move, int score, int depth, long nodes, long elapsedNanos) {
+        this(move, score, depth, nodes, elapsedNanos, false);
+    }
+
+    /**
+     * @param fromBook whether move was taken from an opening book rather
+     *                 than searched
+     */
+    public SearchResult(int move, int score, int depth, long nodes, long elapsedNanos,
+                        boolean fromBook) {
+        this.move = move;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.elapsedNanos = elapsedNanos;
+        this.fromBook = fromBook;
+    }
+
+    /** Returns the best move found, or 0 if the side to move has none. */
+    public int getMove() {
+        return move;
+    }
+
+    /** Returns the score of the move for the side to move. */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the deepest iteration that was completed. This is 0 for a
+     * book move, but also when there was only one move to play or no
+     * iteration finished in time.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /** Returns whether the move came from an opening book. */
+    public boolean isFromBook() {
+        return fromBook;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    public long getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1_000_000_000L / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return (move == 0 ? "no move" : Move.toString(move)) + " score " + score
+                + " depth " + depth + ", " + nodes + " nodes in " + getElapsedMillis()
+                + " ms (" + getNodesPerSecond() / 1000 + " knps)";
+    }
+}
@@ -0,0 +1,404 @@
+package org.cis1200.checkers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Holds many more games than fit in memory as Checkers objects.
+ * <p>
+ * Games live in three tiers. The most recently used ones are Checkers
+ * objects, about 2KB each. When there are too many, the least recently
+ * used is packed into a few dozen bytes of flat arrays: its masks, its
+ * flags and the links of the LRU list and the id hash. When the packed
+ * tier is full too, its least recently used game is spilled to the spill
+ * file as a 16-byte record (black, red and kings masks, then flags). A
+ * game is moved back up to a Checkers object whenever it is used. Ids are
+ * handed out in order and each game has its record at id * 16, so spilled
+ * games take no memory at all.
+ * <p>
+ * Packing keeps the position, the side to move and whether the game is
+ * over; the selected piece, the undo history and the listener are not
+ * kept. Closing the store spills every game, so reopening the spill file
+ * brings them all back.
+ * <p>
+ * Usage: {@code SessionStore <spill file> <games> <budget MB> <seconds>}
+ * creates that many games and plays random moves in them for a while.
+ */
+public class SessionStore implements Closeable {
+
+    /** About how many bytes a Checkers object takes. */
+    public static final int LIVE_GAME_BYTES = 2300;
+    /** How many bytes of memory a packed game takes. */
+    public static final int PACKED_GAME_BYTES = 41;
+
+    private static final int RECORD_BYTES = 16;
+    private static final int EXISTS = 1;
+    private static final int BLACK_TO_MOVE = 2;
+    private static final int GAME_OVER = 4;
+
+    private final FileChannel spill;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private final int maxLive;
+    private long nextId;
+    private long spills;
+    private long rehydrations;
+
+    // the live tier, in access order
+    private final LinkedHashMap<Long, Checkers> live = new LinkedHashMap<>(16, 0.75f, true);
+
+    // the packed tier: one game per slot of these arrays, on a doubly
+    // linked list from the most recently used (head) to the least (tail),
+    // and on a chain from the bucket of its id; free slots are chained
+    // through next
+    private final long[] packedId;
+    private final int[] packedBlack;
+    private final int[] packedRed;
+    private final int[] packedKings;
+    private final byte[] packedFlags;
+    private final int[] prev;
+    private final int[] next;
+    private final int[] chain;
+    private final int[] buckets;
+    private int head = -1;
+    private int tail = -1;
+    private int free;
+    private int packed;
+
+    /**
+     * Opens a store that spills to spillFile, creating it if needed, and
+     * keeps a tenth of memoryBudget for live games and the rest for
+     * packed ones.
+     */
+    public SessionStore(Path spillFile, long memoryBudget) throws IOException {
+        this(spillFile, (int) Math.min(Integer.MAX_VALUE, memoryBudget / 10 / LIVE_GAME_BYTES),
+                (int) Math.min(1 << 30, memoryBudget * 9 / 10 / PACKED_GAME_BYTES));
+    }
+
+    /**
+     * Opens a store that spills to spillFile, creating it if needed.
+     *
+     * @param maxLive   how many games are kept as Checkers objects
+     * @param maxPacked how many more are kept packed in memory
+     * @throws IllegalArgumentException if maxLive is less than 1 or
+     *                                  maxPacked is negative
+     */
+    public SessionStore(Path spillFile, int maxLive, int maxPacked) throws IOException {
+        if (maxLive < 1 || maxPacked < 0 || maxPacked > 1 << 30) {
+            throw new IllegalArgumentException();
+        }
+        this.maxLive = maxLive;
+        spill = FileChannel.open(spillFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        nextId = spill.size() / RECORD_BYTES;
+
+        packedId = new long[maxPacked];
+        packedBlack = new int[maxPacked];
+        packedRed = new int[maxPacked];
+        packedKings = new int[maxPacked];
+        packedFlags = new byte[maxPacked];
+        prev = new int[maxPacked];
+        next = new int[maxPacked];
+        chain = new int[maxPacked];
+        buckets = new int[Math.max(1, Integer.highestOneBit(Math.max(1, maxPacked - 1)) << 1)];
+        Arrays.fill(buckets, -1);
+        for (int i = 0; i < maxPacked; i++) {
+            next[i] = i + 1 < maxPacked ? i + 1 : -1;
+        }
+        free = maxPacked > 0 ? 0 : -1;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.out.println("usage: SessionStore <spill file> <games> <budget MB> <seconds>");
+            return;
+        }
+        int games = Integer.parseInt(args[1]);
+        long budget = Long.parseLong(args[2]) << 20;
+        Runtime rt = Runtime.getRuntime();
+        try (SessionStore store = new SessionStore(Paths.get(args[0]), budget)) {
+            long start = System.nanoTime();
+            while (store.size() < games) {
+                store.create();
+            }
+            System.out.printf("created %d games in %.2f s%n", games,
+                    (System.nanoTime() - start) / 1e9);
+
+            Random random = new Random(1);
+            int[] moves = new int[Move.MAX_MOVES];
+            long deadline = System.nanoTime() + Long.parseLong(args[3]) * 1_000_000_000L;
+            long played = 0;
+            start = System.nanoTime();
+            while (System.nanoTime() < deadline) {
+                //most moves are in recent games, some in old ones
+                long id = random.nextInt(10) < 8 ? games - 1 - random.nextInt(1 + games / 100)
+                        : random.nextInt(games);
+                store.apply(id, game -> {
+                    int n = game.generateMoves(moves);
+                    if (n == 0 || game.checkWinner() != 0) {
+                        game.reset();
+                    } else {
+                        game.makeMove(moves[random.nextInt(n)]);
+                    }
+                    return null;
+                });
+                played++;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.gc();
+            System.out.printf("%d moves in %.2f s, %.0f moves/s; %d live, %d packed, "
+                            + "%d spills, %d rehydrations; heap %d MB%n", played, seconds,
+                    played / seconds, store.live.size(), store.packed, store.spills,
+                    store.rehydrations, (rt.totalMemory() - rt.freeMemory()) >> 20);
+        }
+    }
+
+    /**
+     * Returns how many ids have been handed out.
+     */
+    public synchronized long size() {
+        return nextId;
+    }
+
+    /**
+     * Starts a new game and returns its id.
+     */
+    public synchronized long create() throws IOException {
+        long id = nextId++;
+        Checkers game = new Checkers();
+        live.put(id, game);
+        //claim the game's record, so the file always covers every id
+        write(id, game.getBlackMask(), game.getRedMask(), game.getKingMask(),
+                EXISTS | BLACK_TO_MOVE);
+        evictLive();
+        return id;
+    }
+
+    /**
+     * Runs action on game id, brought back to a Checkers object if it was
+     * packed or spilled, and returns what action returns. The game must
+     * not be used after action returns, since the store may pack it at
+     * any time after that.
+     *
+     * @throws IllegalArgumentException if there is no game id
+     */
+    public synchronized <T> T apply(long id, Function<Checkers, T> action) throws IOException {
+        Checkers game = live.get(id);
+        if (game == null) {
+            game = rehydrate(id);
+            live.put(id, game);
+            evictLive();
+            rehydrations++;
+        }
+        return action.apply(game);
+    }
+
+    /**
+     * Returns whether game id exists.
+     */
+    public synchronized boolean contains(long id) throws IOException {
+        if (id < 0 || id >= nextId) {
+            return false;
+        }
+        return live.containsKey(id) || find(id) >= 0 || (read(id) & EXISTS) != 0;
+    }
+
+    /**
+     * Deletes game id, if there is one.
+     */
+    public synchronized void remove(long id) throws IOException {
+        if (id < 0 || id >= nextId) {
+            return;
+        }
+        live.remove(id);
+        int slot = find(id);
+        if (slot >= 0) {
+            unpack(slot);
+        }
+        write(id, 0, 0, 0, 0);
+    }
+
+    /**
+     * Spills every game and closes the spill file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            for (Map.Entry<Long, Checkers> e : live.entrySet()) {
+                Checkers game = e.getValue();
+                write(e.getKey(), game.getBlackMask(), game.getRedMask(), game.getKingMask(),
+                        flags(game));
+            }
+            live.clear();
+            while (tail >= 0) {
+                spillSlot(tail);
+            }
+            spill.force(false);
+        } finally {
+            spill.close();
+        }
+    }
+
+    private static int flags(Checkers game) {
+        return EXISTS | (game.getCurrentPlayer() ? BLACK_TO_MOVE : 0)
+                | (game.checkWinner() != 0 ? GAME_OVER : 0);
+    }
+
+    //packs live games past maxLive, least recently used first
+    private void evictLive() throws IOException {
+        Iterator<Map.Entry<Long, Checkers>> it = live.entrySet().iterator();
+        while (live.size() > maxLive) {
+            Map.Entry<Long, Checkers> eldest = it.next();
+            it.remove();
+            Checkers game = eldest.getValue();
+            pack(eldest.getKey(), game.getBlackMask(), game.getRedMask(), game.getKingMask(),
+                    flags(game));
+        }
+    }
+
+    private Checkers rehydrate(long id) throws IOException {
+        if (id < 0 || id >= nextId) {
+            throw new IllegalArgumentException("no game " + id);
+        }
+        int b;
+        int r;
+        int k;
+        int flags;
+        int slot = find(id);
+        if (slot >= 0) {
+            b = packedBlack[slot];
+            r = packedRed[slot];
+            k = packedKings[slot];
+            flags = packedFlags[slot];
+            unpack(slot);
+        } else {
+            flags = read(id);
+            if ((flags & EXISTS) == 0) {
+                throw new IllegalArgumentException("no game " + id);
+            }
+            b = record.getInt(0);
+            r = record.getInt(4);
+            k = record.getInt(8);
+        }
+        Checkers game = new Checkers();
+        game.setPosition(b, r, k, (flags & BLACK_TO_MOVE) != 0);
+        if ((flags & GAME_OVER) != 0) {
+            game.setGameOver();
+        }
+        return game;
+    }
+
+    private void pack(long id, int b, int r, int k, int flags) throws IOException {
+        if (packedId.length == 0) {
+            write(id, b, r, k, flags);
+            return;
+        }
+        if (free < 0) {
+            spillSlot(tail);
+        }
+        int slot = free;
+        free = next[slot];
+        packedId[slot] = id;
+        packedBlack[slot] = b;
+        packedRed[slot] = r;
+        packedKings[slot] = k;
+        packedFlags[slot] = (byte) flags;
+        //newest first on the LRU list
+        prev[slot] = -1;
+        next[slot] = head;
+        if (head >= 0) {
+            prev[head] = slot;
+        } else {
+            tail = slot;
+        }
+        head = slot;
+        int bucket = bucket(id);
+        chain[slot] = buckets[bucket];
+        buckets[bucket] = slot;
+        packed++;
+    }
+
+    private void spillSlot(int slot) throws IOException {
+        write(packedId[slot], packedBlack[slot], packedRed[slot], packedKings[slot],
+                packedFlags[slot]);
+        unpack(slot);
+        spills++;
+    }
+
+    //takes slot off the LRU list and its hash chain and frees it
+    private void unpack(int slot) {
+        if (prev[slot] >= 0) {
+            next[prev[slot]] = next[slot];
+        } else {
+            head = next[slot];
+        }
+        if (next[slot] >= 0) {
+            prev[next[slot]] = prev[slot];
+        } else {
+            tail = prev[slot];
+        }
+        int bucket = bucket(packedId[slot]);
+        if (buckets[bucket] == slot) {
+            buckets[bucket] = chain[slot];
+        } else {
+            int s = buckets[bucket];
+            while (chain[s] != slot) {
+                s = chain[s];
+            }
+            chain[s] = chain[slot];
+        }
+        next[slot] = free;
+        free = slot;
+        packed--;
+    }
+
+    private int find(long id) {
+        if (packedId.length == 0) {
+            return -1;
+        }
+        for (int s = buckets[bucket(id)]; s >= 0; s = chain[s]) {
+            if (packedId[s] == id) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    private int bucket(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & buckets.length - 1;
+    }
+
+    private void write(long id, int b, int r, int k, int flags) throws IOException {
+        record.clear();
+        record.putInt(b).putInt(r).putInt(k).putInt(flags).flip();
+        long at = id * RECORD_BYTES;
+        while (record.hasRemaining()) {
+            at += spill.write(record, at);
+        }
+    }
+
+    //reads the record of id into record and returns its flags
+    private int read(long id) throws IOException {
+        record.clear();
+        long at = id * RECORD_BYTES;
+        while (record.hasRemaining()) {
+            int n = spill.read(record, at);
+            if (n < 0) {
+                return 0;
+            }
+            at += n;
+        }
+        return record.getInt(12);
+    }
+}
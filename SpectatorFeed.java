@@ -0,0 +1,356 @@
+package org.cis1200.checkers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a live game to any number of spectators.
+ * <p>
+ * Attach the feed to a game as its GameListener (with GameListener.of to
+ * keep another one). A new subscriber first gets a keyframe, the whole
+ * position in 18 bytes: a KEYFRAME byte, the frame's sequence number, the
+ * black, red and kings masks and 1 if black is to move. After that each
+ * move is a delta of 6 bytes plus one per changed square: a DELTA byte,
+ * the sequence number, the number of changes and for each one a byte
+ * holding the square in its low five bits and the piece now on it (a
+ * Checkers piece code, 0 for a capture or the square left) in the high
+ * three. Every delta also passes the turn. Frames are encoded once and
+ * shared by all subscribers.
+ * <p>
+ * Publishing never waits for a spectator. Each subscription has a bounded
+ * queue, and when a slow spectator's queue is full its backlog is dropped
+ * and replaced by a keyframe of the current position, so it skips ahead
+ * rather than holding up the game or the others. {@link Replica} rebuilds
+ * the position from frames.
+ * <p>
+ * Usage: {@code SpectatorFeed <subscribers> <moves>} plays random moves
+ * to that many subscribers, some of them slow, and checks that every one
+ * of them ends up with the right position.
+ */
+public class SpectatorFeed implements GameListener {
+
+    public static final byte KEYFRAME = 1;
+    public static final byte DELTA = 2;
+    public static final int KEYFRAME_BYTES = 18;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+    private int sequence;
+    private byte[] keyframe; // of the current position, made when first needed
+    // the position as of the last frame
+    private int black;
+    private int red;
+    private int kings;
+    private boolean blackToMove;
+    private int lastFrameBytes; // for the benchmark
+
+    /**
+     * Starts a feed of game, which is in its current position.
+     */
+    public SpectatorFeed(Checkers game) {
+        positionChanged(game);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length != 2) {
+            System.out.println("usage: SpectatorFeed <subscribers> <moves>");
+            return;
+        }
+        int subscribers = Integer.parseInt(args[0]);
+        int moves = Integer.parseInt(args[1]);
+        Checkers game = new Checkers();
+        SpectatorFeed feed = new SpectatorFeed(game);
+        game.setGameListener(feed);
+
+        List<Subscription> subs = new ArrayList<>();
+        List<Replica> replicas = new ArrayList<>();
+        for (int i = 0; i < subscribers; i++) {
+            subs.add(feed.subscribe(64));
+            replicas.add(new Replica());
+        }
+        //a tenth of the spectators only catch up now and then
+        Thread watcher = new Thread(() -> {
+            for (int round = 0; !Thread.currentThread().isInterrupted(); round++) {
+                for (int i = 0; i < subs.size(); i++) {
+                    if (i % 10 == 0 && round % 100 != 0) {
+                        continue;
+                    }
+                    for (byte[] frame; (frame = subs.get(i).poll()) != null; ) {
+                        replicas.get(i).apply(frame);
+                    }
+                }
+                Thread.yield();
+            }
+        });
+        watcher.start();
+
+        Random random = new Random(1);
+        int[] legal = new int[Move.MAX_MOVES];
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int m = 0; m < moves; m++) {
+            int n = game.generateMoves(legal);
+            if (n == 0 || game.checkWinner() != 0) {
+                game.reset();
+                bytes += KEYFRAME_BYTES;
+                continue;
+            }
+            game.playMove(legal[random.nextInt(n)]);
+            bytes += feed.lastFrameBytes;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        watcher.interrupt();
+        watcher.join();
+
+        int wrong = 0;
+        long skips = 0;
+        for (int i = 0; i < subscribers; i++) {
+            for (byte[] frame; (frame = subs.get(i).poll()) != null; ) {
+                replicas.get(i).apply(frame);
+            }
+            Replica r = replicas.get(i);
+            if (r.getBlackMask() != game.getBlackMask() || r.getRedMask() != game.getRedMask()
+                    || r.getKingMask() != game.getKingMask()
+                    || r.getCurrentPlayer() != game.getCurrentPlayer()) {
+                wrong++;
+            }
+            skips += subs.get(i).getSkips();
+        }
+        System.out.printf("%d moves to %d subscribers in %.2f s, %.0f frames/s delivered, "
+                        + "%.1f bytes a frame%n", moves, subscribers, seconds,
+                (double) moves * subscribers / seconds, bytes / (double) moves);
+        System.out.printf("%d skips to a keyframe, %d subscribers with a wrong position%n",
+                skips, wrong);
+    }
+
+    /**
+     * Subscribes a spectator, who first gets a keyframe of the current
+     * position.
+     *
+     * @param capacity how many frames may wait for the spectator before it
+     *                 is skipped ahead to a keyframe
+     * @throws IllegalArgumentException if capacity is less than 2
+     */
+    public Subscription subscribe(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException();
+        }
+        Subscription s = new Subscription(capacity);
+        synchronized (lock) {
+            s.queue.add(keyframe());
+            subscriptions.add(s);
+        }
+        return s;
+    }
+
+    @Override
+    public void moved(Checkers game, int move) {
+        synchronized (lock) {
+            int changed = (black ^ game.getBlackMask()) | (red ^ game.getRedMask())
+                    | (kings ^ game.getKingMask());
+            byte[] frame = new byte[6 + Integer.bitCount(changed)];
+            frame[0] = DELTA;
+            putInt(frame, 1, ++sequence);
+            frame[5] = (byte) Integer.bitCount(changed);
+            int i = 6;
+            for (int m = changed; m != 0; m &= m - 1) {
+                int s = Integer.numberOfTrailingZeros(m);
+                frame[i++] = (byte) (s | code(game, s) << 5);
+            }
+            remember(game);
+            publish(frame);
+        }
+    }
+
+    @Override
+    public void positionChanged(Checkers game) {
+        synchronized (lock) {
+            ++sequence;
+            remember(game);
+            if (subscriptions.isEmpty()) {
+                return;
+            }
+            publish(keyframe());
+        }
+    }
+
+    private void remember(Checkers game) {
+        black = game.getBlackMask();
+        red = game.getRedMask();
+        kings = game.getKingMask();
+        blackToMove = game.getCurrentPlayer();
+        keyframe = null;
+    }
+
+    private byte[] keyframe() {
+        if (keyframe == null) {
+            byte[] frame = new byte[KEYFRAME_BYTES];
+            frame[0] = KEYFRAME;
+            putInt(frame, 1, sequence);
+            putInt(frame, 5, black);
+            putInt(frame, 9, red);
+            putInt(frame, 13, kings);
+            frame[17] = (byte) (blackToMove ? 1 : 0);
+            keyframe = frame;
+        }
+        return keyframe;
+    }
+
+    private void publish(byte[] frame) {
+        lastFrameBytes = frame.length;
+        for (Subscription s : subscriptions) {
+            if (!s.queue.offer(frame)) {
+                //too far behind: drop the backlog and start it afresh
+                s.queue.clear();
+                s.queue.offer(keyframe());
+                s.skips++;
+            }
+        }
+    }
+
+    private static int code(Checkers game, int s) {
+        return game.getPlayer(Bitboard.row(s), Bitboard.col(s));
+    }
+
+    private static void putInt(byte[] b, int at, int v) {
+        b[at] = (byte) (v >>> 24);
+        b[at + 1] = (byte) (v >>> 16);
+        b[at + 2] = (byte) (v >>> 8);
+        b[at + 3] = (byte) v;
+    }
+
+    private static int getInt(byte[] b, int at) {
+        return (b[at] & 0xFF) << 24 | (b[at + 1] & 0xFF) << 16 | (b[at + 2] & 0xFF) << 8
+                | b[at + 3] & 0xFF;
+    }
+
+    /**
+     * One spectator's frames, in order.
+     */
+    public final class Subscription implements AutoCloseable {
+        private final BlockingQueue<byte[]> queue;
+        private volatile long skips;
+
+        private Subscription(int capacity) {
+            queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Returns the next frame, or null if there is none yet.
+         */
+        public byte[] poll() {
+            return queue.poll();
+        }
+
+        /**
+         * Returns the next frame, waiting up to timeout for one, or null.
+         */
+        public byte[] poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.poll(timeout, unit);
+        }
+
+        /**
+         * Returns how many times this spectator fell too far behind and was
+         * skipped ahead to a keyframe.
+         */
+        public long getSkips() {
+            return skips;
+        }
+
+        /**
+         * Stops the frames.
+         */
+        @Override
+        public void close() {
+            subscriptions.remove(this);
+        }
+    }
+
+    /**
+     * A spectator's copy of the position, kept up to date from frames.
+     */
+    public static final class Replica {
+        private int black;
+        private int red;
+        private int kings;
+        private boolean blackToMove;
+        private int sequence;
+        private boolean synced; // whether a keyframe has come since a gap
+
+        /**
+         * Applies a frame. Deltas are ignored between a gap in the
+         * sequence and the next keyframe.
+         *
+         * @return whether the replica is up to date after the frame
+         * @throws IllegalArgumentException if frame is not a frame
+         */
+        public boolean apply(byte[] frame) {
+            if (frame.length == KEYFRAME_BYTES && frame[0] == KEYFRAME) {
+                sequence = getInt(frame, 1);
+                black = getInt(frame, 5);
+                red = getInt(frame, 9);
+                kings = getInt(frame, 13);
+                blackToMove = frame[17] != 0;
+                synced = true;
+                return true;
+            }
+            if (frame.length < 6 || frame[0] != DELTA || frame.length != 6 + frame[5]) {
+                throw new IllegalArgumentException();
+            }
+            int seq = getInt(frame, 1);
+            if (!synced || seq != sequence + 1) {
+                synced = false;
+                return false;
+            }
+            for (int i = 6; i < frame.length; i++) {
+                int s = frame[i] & 31;
+                int piece = (frame[i] & 0xFF) >>> 5;
+                int bit = 1 << s;
+                black = piece == 1 || piece == 3 ? black | bit : black & ~bit;
+                red = piece == 2 || piece == 4 ? red | bit : red & ~bit;
+                kings = piece >= 3 ? kings | bit : kings & ~bit;
+            }
+            blackToMove = !blackToMove;
+            sequence = seq;
+            return true;
+        }
+
+        /**
+         * Returns the piece on row r, column c, with the same codes as
+         * Checkers.getPlayer.
+         */
+        public int getPlayer(int r, int c) {
+            int s = Bitboard.square(r, c);
+            if (s < 0) {
+                return 0;
+            }
+            int king = (kings >>> s & 1) * 2;
+            return (black >>> s & 1) != 0 ? 1 + king : (red >>> s & 1) != 0 ? 2 + king : 0;
+        }
+
+        public int getBlackMask() {
+            return black;
+        }
+
+        public int getRedMask() {
+            return red;
+        }
+
+        public int getKingMask() {
+            return kings;
+        }
+
+        public boolean getCurrentPlayer() {
+            return blackToMove;
+        }
+
+        public boolean isSynced() {
+            return synced;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.cis1200.checkers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Exact endgame results read from tablebase files written by
+ * TablebaseGenerator.
+ * <p>
+ * Positions are grouped into slices by how many black men, black kings,
+ * red men and red kings they have, with one file per slice. Within a
+ * slice every position has an index (see {@link #index}) and the file
+ * holds one byte per index and side to move:
+ * <ul>
+ * <li>0: a draw,</li>
+ * <li>d from 1 to 126: the side to move wins in d plies,</li>
+ * <li>-(d + 1): the side to move loses in d plies.</li>
+ * </ul>
+ * Distances above 126 plies are stored as 126. Files are memory-mapped
+ * when first probed, so looking a position up costs one byte read and any
+ * number of threads can probe at once. Whether a slice has a file is
+ * only checked on its first probe: a file written after that is not seen
+ * until a new Tablebase is opened.
+ */
+public class Tablebase {
+
+    /** Returned by probe when no file covers the position. */
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+    public static final int MAX_DISTANCE = 126;
+
+    static final int MAGIC = 0x434B5442; // "CKTB"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    // BINOMIAL[n][k] = n choose k
+    private static final long[][] BINOMIAL = new long[33][33];
+
+    static {
+        for (int n = 0; n <= 32; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+            }
+        }
+    }
+
+    private static final ByteBuffer MISSING = ByteBuffer.allocate(0);
+    private static final int KINDS = 13; // 0 to 12 pieces of a kind, the most a side has
+
+    private final Path directory;
+    // by slot, null until the slice is first probed
+    private final AtomicReferenceArray<ByteBuffer> slices =
+            new AtomicReferenceArray<>(KINDS * KINDS * KINDS * KINDS);
+    private final int maxPieces;
+
+    /**
+     * Opens the tablebase files in directory. Files are only read when a
+     * position from their slice is probed.
+     */
+    public Tablebase(Path directory) {
+        this.directory = directory;
+        int max = 0;
+        for (int n = 2; n <= 32; n++) {
+            if (Files.exists(directory.resolve(fileName(1, 0, n - 1, 0)))) {
+                max = n;
+            }
+        }
+        maxPieces = max;
+    }
+
+    /**
+     * Returns the largest number of pieces the files in this tablebase
+     * cover, judged by which one-man-against-men slices exist.
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    public int probe(Checkers game) {
+        return probe(game.getBlackMask(), game.getRedMask(), game.getKingMask(),
+                game.getCurrentPlayer());
+    }
+
+    /**
+     * Returns the stored result for a position, encoded as described
+     * above, or NOT_FOUND.
+     */
+    public int probe(int black, int red, int kings, boolean blackToMove) {
+        int bm = Integer.bitCount(black & ~kings);
+        int bk = Integer.bitCount(black & kings);
+        int rm = Integer.bitCount(red & ~kings);
+        int rk = Integer.bitCount(red & kings);
+        if (bm + bk >= KINDS || rm + rk >= KINDS) {
+            return NOT_FOUND;
+        }
+        int slot = ((bm * KINDS + bk) * KINDS + rm) * KINDS + rk;
+        ByteBuffer data = slices.get(slot);
+        if (data == null) {
+            //threads racing here map the same file, and one mapping wins
+            slices.compareAndSet(slot, null, map(fileName(bm, bk, rm, rk)));
+            data = slices.get(slot);
+        }
+        if (data == MISSING) {
+            return NOT_FOUND;
+        }
+        long i = index(bm, bk, rm, rk, black & ~kings, black & kings, red & ~kings, red & kings);
+        if (i < 0) {
+            return NOT_FOUND;
+        }
+        long entry = blackToMove ? i : i + sliceSize(bm, bk, rm, rk);
+        return data.get(HEADER_BYTES + (int) entry);
+    }
+
+    public static boolean isWin(int value) {
+        return value > 0 && value != NOT_FOUND;
+    }
+
+    public static boolean isLoss(int value) {
+        return value < 0 && value != NOT_FOUND;
+    }
+
+    /**
+     * Returns the number of plies to the end of a won or lost game.
+     */
+    public static int distance(int value) {
+        return value > 0 ? value : -value - 1;
+    }
+
+    private ByteBuffer map(String name) {
+        Path file = directory.resolve(name);
+        if (!Files.exists(file)) {
+            return MISSING;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                throw new IllegalStateException("not a tablebase file: " + file);
+            }
+            return data;
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot read " + file, e);
+        }
+    }
+
+    static String fileName(int bm, int bk, int rm, int rk) {
+        return "cktb-" + bm + bk + rm + rk + ".bin";
+    }
+
+    static int sliceKey(int bm, int bk, int rm, int rk) {
+        return bm | bk << 8 | rm << 16 | rk << 24;
+    }
+
+    /**
+     * Returns the number of indices in a slice, for one side to move.
+     * Black men can only stand on rows 1 to 7 and red men on rows 0 to 6,
+     * so each colour's men are placed on 28 squares; the kings then go on
+     * the squares the men left free.
+     */
+    static long sliceSize(int bm, int bk, int rm, int rk) {
+        int free = 32 - bm - rm;
+        return BINOMIAL[28][bm] * BINOMIAL[28][rm] * BINOMIAL[free][bk]
+                * BINOMIAL[free - bk][rk];
+    }
+
+    /**
+     * Returns the index of a position within its slice, or -1 if a man
+     * stands on its promotion row. The arguments are the squares of each
+     * kind of piece.
+     */
+    static long index(int bm, int bk, int rm, int rk,
+                      int blackMen, int blackKings, int redMen, int redKings) {
+        if ((blackMen & Bitboard.TOP_ROW) != 0 || (redMen & Bitboard.BOTTOM_ROW) != 0) {
+            return -1;
+        }
+        int free = ~(blackMen | redMen);
+        int free2 = free & ~blackKings;
+        long i = rank(blackMen >>> 4);
+        i = i * BINOMIAL[28][rm] + rank(redMen);
+        i = i * BINOMIAL[32 - bm - rm][bk] + rank(compress(blackKings, free));
+        i = i * BINOMIAL[32 - bm - rm - bk][rk] + rank(compress(redKings, free2));
+        return i;
+    }
+
+    /**
+     * Writes the position with the given index into out as {blackMen,
+     * blackKings, redMen, redKings}. Returns false if the two colours' men
+     * overlap, in which case the index stands for no position.
+     */
+    static boolean position(int bm, int bk, int rm, int rk, long index, int[] out) {
+        int free = 32 - bm - rm;
+        long rkCount = BINOMIAL[free - bk][rk];
+        long bkCount = BINOMIAL[free][bk];
+        long rmCount = BINOMIAL[28][rm];
+        int redKingBits = unrank(index % rkCount, rk);
+        index /= rkCount;
+        int blackKingBits = unrank(index % bkCount, bk);
+        index /= bkCount;
+        int redMen = unrank(index % rmCount, rm);
+        int blackMen = unrank(index / rmCount, bm) << 4;
+        if ((blackMen & redMen) != 0) {
+            return false;
+        }
+        int freeSquares = ~(blackMen | redMen);
+        out[0] = blackMen;
+        out[1] = expand(blackKingBits, freeSquares);
+        out[2] = redMen;
+        out[3] = expand(redKingBits, freeSquares & ~out[1]);
+        return true;
+    }
+
+    // combinatorial number system: the k-subset {e0 < e1 < ...} has rank
+    // C(e0, 1) + C(e1, 2) + ..., which numbers all k-subsets from 0
+
+    private static long rank(int bits) {
+        long r = 0;
+        int i = 1;
+        for (int b = bits; b != 0; b &= b - 1) {
+            r += BINOMIAL[Integer.numberOfTrailingZeros(b)][i++];
+        }
+        return r;
+    }
+
+    private static int unrank(long r, int k) {
+        int bits = 0;
+        int e = 31;
+        for (int i = k; i >= 1; i--) {
+            while (BINOMIAL[e][i] > r) {
+                e--;
+            }
+            bits |= 1 << e;
+            r -= BINOMIAL[e][i];
+            e--;
+        }
+        return bits;
+    }
+
+    // compress keeps the bits of mask that are in free and packs them down
+    // to the low end, so bit j says whether the j-th free square is in mask;
+    // expand undoes it
+
+    private static int compress(int mask, int free) {
+        int bits = 0;
+        for (int m = mask; m != 0; m &= m - 1) {
+            int s = Integer.numberOfTrailingZeros(m);
+            bits |= 1 << Integer.bitCount(free & ((1 << s) - 1));
+        }
+        return bits;
+    }
+
+    private static int expand(int bits, int free) {
+        int mask = 0;
+        int f = free;
+        int j = 0;
+        for (int b = bits; b != 0; b &= b - 1) {
+            for (int target = Integer.numberOfTrailingZeros(b); j < target; j++) {
+                f &= f - 1;
+            }
+            mask |= Integer.lowestOneBit(f);
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,230 @@
+package org.cis1200.checkers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.stream.IntStream;
+
+/**
+ * Builds the tablebase files read by Tablebase, for every position with up
+ * to a given number of pieces.
+ * <p>
+ * Slices are solved smallest first. A capture always leads to a slice with
+ * fewer pieces and a promotion to one with fewer men, so by the time a
+ * slice is solved every slice its moves can leave for is already on disk.
+ * Each slice is solved by retrograde iteration: pass 0 marks the positions
+ * where the side to move has no move as lost, and pass p marks a position
+ * as won in p plies if some move reaches a position lost in p - 1, or as
+ * lost in p plies if every move reaches a position already won. Passes run
+ * in parallel over all positions of the slice, and a pass only trusts
+ * results from earlier passes, so the output does not depend on the number
+ * of threads. Whatever is left when the passes stop changing is a draw.
+ * <p>
+ * Usage: {@code TablebaseGenerator <max pieces> [directory]}.
+ */
+public class TablebaseGenerator {
+
+    private final Path directory;
+    private final Tablebase finished;
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    public TablebaseGenerator(Path directory) {
+        this.directory = directory;
+        this.finished = new Tablebase(directory);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("usage: TablebaseGenerator <max pieces> [directory]");
+            return;
+        }
+        Path directory = Paths.get(args.length > 1 ? args[1] : "tablebase");
+        Files.createDirectories(directory);
+        new TablebaseGenerator(directory).generate(Integer.parseInt(args[0]));
+    }
+
+    /**
+     * Writes every slice with 2 to maxPieces pieces that is not already in
+     * the directory.
+     */
+    public void generate(int maxPieces) throws IOException {
+        for (int total = 2; total <= maxPieces; total++) {
+            for (int men = 0; men <= total; men++) {
+                for (int bm = 0; bm <= men; bm++) {
+                    for (int bk = 0; bk <= total - men; bk++) {
+                        int rm = men - bm;
+                        int rk = total - men - bk;
+                        if (bm + bk > 0 && rm + rk > 0 && bm <= 28 && rm <= 28
+                                && !Files.exists(file(bm, bk, rm, rk))) {
+                            generateSlice(bm, bk, rm, rk);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Path file(int bm, int bk, int rm, int rk) {
+        return directory.resolve(Tablebase.fileName(bm, bk, rm, rk));
+    }
+
+    private void generateSlice(int bm, int bk, int rm, int rk) throws IOException {
+        long start = System.nanoTime();
+        long size = Tablebase.sliceSize(bm, bk, rm, rk);
+        if (2 * size + Tablebase.HEADER_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("slice " + bm + bk + rm + rk + " is too large");
+        }
+        Slice slice = new Slice(bm, bk, rm, rk, size);
+        int pass = 0;
+        boolean again;
+        do {
+            AtomicBoolean changed = new AtomicBoolean();
+            LongAccumulator pending = new LongAccumulator(Math::max, -1);
+            int p = pass;
+            IntStream.range(0, slice.values.length).parallel()
+                    .forEach(i -> workers.get().visit(slice, i, p, changed, pending));
+            //pass 0 only finds the lost positions, so always run pass 1; then
+            //keep going while something changed, or while some position is
+            //waiting on a result that a later pass will be able to use
+            again = pass == 0 || changed.get() || pending.get() >= pass;
+            pass++;
+        } while (again);
+        write(slice);
+
+        long wins = 0;
+        long losses = 0;
+        for (byte v : slice.values) {
+            wins += v > 0 ? 1 : 0;
+            losses += v < 0 ? 1 : 0;
+        }
+        System.out.println(Tablebase.fileName(bm, bk, rm, rk) + ": " + slice.values.length
+                + " entries, " + wins + " wins, " + losses + " losses, " + pass + " passes, "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private void write(Slice slice) throws IOException {
+        Path target = file(slice.bm, slice.bk, slice.rm, slice.rk);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        ByteBuffer header = ByteBuffer.allocate(Tablebase.HEADER_BYTES);
+        header.putInt(Tablebase.MAGIC).putInt(Tablebase.VERSION)
+                .putInt(Tablebase.sliceKey(slice.bm, slice.bk, slice.rm, slice.rk))
+                .putInt((int) slice.size).flip();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(new ByteBuffer[] {header, ByteBuffer.wrap(slice.values)});
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * The results of one slice while it is being solved, in the same
+     * encoding as the files, with 0 standing for "not known yet".
+     */
+    private static class Slice {
+        final int bm;
+        final int bk;
+        final int rm;
+        final int rk;
+        final long size;
+        final byte[] values;
+
+        Slice(int bm, int bk, int rm, int rk, long size) {
+            this.bm = bm;
+            this.bk = bk;
+            this.rm = rm;
+            this.rk = rk;
+            this.size = size;
+            this.values = new byte[(int) (2 * size)];
+        }
+    }
+
+    /**
+     * Per-thread scratch state for visiting positions.
+     */
+    private class Worker {
+        private final Checkers game = new Checkers();
+        private final int[] moves = new int[Move.MAX_MOVES];
+        private final int[] position = new int[4];
+
+        void visit(Slice slice, int i, int pass, AtomicBoolean changed, LongAccumulator pending) {
+            if (slice.values[i] != 0) {
+                return;
+            }
+            boolean blackToMove = i < slice.size;
+            long index = blackToMove ? i : i - slice.size;
+            if (!Tablebase.position(slice.bm, slice.bk, slice.rm, slice.rk, index, position)) {
+                return;
+            }
+            game.setPosition(position[0] | position[1], position[2] | position[3],
+                    position[1] | position[3], blackToMove);
+            int n = game.generateMoves(moves);
+            if (pass == 0) {
+                if (n == 0) {
+                    slice.values[i] = -1; // lost in 0 plies
+                    changed.set(true);
+                }
+                return;
+            }
+
+            boolean won = false;
+            boolean allWon = true;
+            int longestWin = 0;
+            for (int m = 0; m < n && !won; m++) {
+                game.makeMove(moves[m]);
+                int v = childValue(slice);
+                game.unmakeMove(moves[m]);
+                if (v == 0) {
+                    allWon = false;
+                } else if (Tablebase.distance(v) >= pass) {
+                    //only results from earlier passes count in this one
+                    allWon = false;
+                    pending.accumulate(Tablebase.distance(v));
+                } else if (v < 0) {
+                    won = true;
+                } else {
+                    longestWin = Math.max(longestWin, v);
+                }
+            }
+            if (won) {
+                slice.values[i] = (byte) Math.min(pass, Tablebase.MAX_DISTANCE);
+                changed.set(true);
+            } else if (allWon) {
+                slice.values[i] = (byte) -(Math.min(longestWin + 1, Tablebase.MAX_DISTANCE) + 1);
+                changed.set(true);
+            }
+        }
+
+        private int childValue(Slice slice) {
+            int black = game.getBlackMask();
+            int red = game.getRedMask();
+            int kings = game.getKingMask();
+            boolean blackToMove = game.getCurrentPlayer();
+            if ((blackToMove ? black : red) == 0) {
+                return -1; // everything was captured
+            }
+            int bm = Integer.bitCount(black & ~kings);
+            int bk = Integer.bitCount(black & kings);
+            int rm = Integer.bitCount(red & ~kings);
+            int rk = Integer.bitCount(red & kings);
+            if (bm == slice.bm && bk == slice.bk && rm == slice.rm && rk == slice.rk) {
+                long index = Tablebase.index(bm, bk, rm, rk, black & ~kings, black & kings,
+                        red & ~kings, red & kings);
+                return slice.values[(int) (blackToMove ? index : index + slice.size)];
+            }
+            int v = finished.probe(black, red, kings, blackToMove);
+            if (v == Tablebase.NOT_FOUND) {
+                throw new IllegalStateException("missing slice " + bm + bk + rm + rk);
+            }
+            return v;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.cis1200.checkers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Plays many games between two players on all cores and reports how much
+ * stronger the first is, in Elo.
+ * <p>
+ * Games are played in pairs from the same opening, a few random moves
+ * from the start chosen with the game's seed, with each player taking
+ * black once. A game is won when checkWinner says so or the side to move
+ * has no legal move, and drawn after MAX_PLIES plies. With a fixed-depth
+ * or random player every game depends only on the seed and the game
+ * number, so a run can be repeated exactly.
+ * <p>
+ * Usage: {@code Tournament <player> <player> <games> [seed] [opening plies]},
+ * where a player is "random", "depth:N" for an Engine searching N plies,
+ * or "millis:N" for an Engine given N milliseconds a move.
+ */
+public class Tournament {
+
+    public static final int MAX_PLIES = 200;
+    public static final int DEFAULT_OPENING_PLIES = 6;
+
+    private final String first;
+    private final String second;
+    private final long seed;
+    private final int openingPlies;
+
+    // results, from the first player's side
+    private final LongAdder wins = new LongAdder();
+    private final LongAdder draws = new LongAdder();
+    private final LongAdder losses = new LongAdder();
+    private final LongAdder plies = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+
+    /**
+     * @param first  the player whose strength is reported, as described
+     *               in the class comment
+     * @param second the player it is measured against
+     * @throws IllegalArgumentException if a player is not understood or
+     *                                  openingPlies is negative
+     */
+    public Tournament(String first, String second, long seed, int openingPlies) {
+        parse(first);
+        parse(second);
+        if (openingPlies < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.first = first;
+        this.second = second;
+        this.seed = seed;
+        this.openingPlies = openingPlies;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("usage: Tournament <player> <player> <games> [seed] "
+                    + "[opening plies]");
+            System.out.println("players: random, depth:N, millis:N");
+            return;
+        }
+        Tournament t = new Tournament(args[0], args[1],
+                args.length > 3 ? Long.parseLong(args[3]) : 1,
+                args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_OPENING_PLIES);
+        int games = Integer.parseInt(args[2]);
+        long start = System.nanoTime();
+        t.play(games);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%s vs %s: +%d =%d -%d%n", args[0], args[1], t.wins.sum(),
+                t.draws.sum(), t.losses.sum());
+        System.out.println(t.elo());
+        System.out.printf("%d games in %.2f s, %.0f games/s, %.1f plies a game, "
+                        + "CPU %.0f%% of %d cores%n", games, seconds, games / seconds,
+                t.plies.sum() / (double) games, 100 * t.cpuNanos.sum() / 1e9 / seconds / cores,
+                cores);
+    }
+
+    /**
+     * Plays games games, or one more if games is odd so both players get
+     * black from every opening, in parallel on all cores.
+     */
+    public void play(int games) {
+        ThreadLocal<Player[]> players = ThreadLocal.withInitial(
+                () -> new Player[] {parse(first), parse(second)});
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        IntStream.range(0, (games + 1) / 2).parallel().forEach(pair -> {
+            long cpu = threads.getCurrentThreadCpuTime();
+            Player[] p = players.get();
+            playGame(2 * pair, p[0], p[1]);
+            playGame(2 * pair + 1, p[1], p[0]);
+            cpuNanos.add(threads.getCurrentThreadCpuTime() - cpu);
+        });
+    }
+
+    /**
+     * Returns the first player's Elo difference with a 95% error bar,
+     * such as "Elo +35.2 +/- 12.1 (95%), score 55.0%".
+     */
+    public String elo() {
+        double n = wins.sum() + draws.sum() + losses.sum();
+        if (n == 0) {
+            return "no games";
+        }
+        double score = (wins.sum() + draws.sum() / 2.0) / n;
+        //standard error of the mean score of one game
+        double variance = (wins.sum() * Math.pow(1 - score, 2)
+                + draws.sum() * Math.pow(0.5 - score, 2)
+                + losses.sum() * Math.pow(score, 2)) / n;
+        double error = 1.96 * Math.sqrt(variance / n);
+        double low = elo(score - error);
+        double high = elo(score + error);
+        return String.format("Elo %+.1f +/- %.1f (95%%), score %.1f%%", elo(score),
+                (high - low) / 2, 100 * score);
+    }
+
+    private static double elo(double score) {
+        double s = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+        return -400 * Math.log10(1 / s - 1);
+    }
+
+    private void playGame(int number, Player black, Player red) {
+        //both games of a pair get the same opening
+        long gameSeed = new SplittableRandom(seed + number / 2 * 0x9E3779B97F4A7C15L).nextLong();
+        SplittableRandom random = new SplittableRandom(gameSeed);
+        black.newGame(gameSeed);
+        red.newGame(gameSeed + 1);
+        Checkers game = new Checkers();
+        int[] moves = new int[Move.MAX_MOVES];
+        int ply = 0;
+        int winner = 0;
+        while (ply < MAX_PLIES) {
+            int n = game.generateMoves(moves);
+            winner = n == 0 ? (game.getCurrentPlayer() ? 2 : 1) : game.checkWinner();
+            if (winner != 0) {
+                break;
+            }
+            int move = ply < openingPlies ? moves[random.nextInt(n)]
+                    : (game.getCurrentPlayer() ? black : red).chooseMove(game);
+            game.makeMove(move);
+            ply++;
+        }
+        plies.add(ply);
+        boolean firstIsBlack = number % 2 == 0;
+        if (winner == 0) {
+            draws.increment();
+        } else if ((winner == 1) == firstIsBlack) {
+            wins.increment();
+        } else {
+            losses.increment();
+        }
+    }
+
+    /**
+     * Returns a new player for spec, as described in the class comment.
+     *
+     * @throws IllegalArgumentException if spec is not understood
+     */
+    public static Player parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            if (parts.length == 1 && parts[0].equals("random")) {
+                return new RandomPlayer();
+            } else if (parts.length == 2 && parts[0].equals("depth")) {
+                return new EnginePlayer(Integer.parseInt(parts[1]), 0);
+            } else if (parts.length == 2 && parts[0].equals("millis")) {
+                return new EnginePlayer(Engine.MAX_PLY, Integer.parseInt(parts[1]));
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new IllegalArgumentException("unknown player: " + spec);
+    }
+
+    private static class RandomPlayer implements Player {
+        private final int[] moves = new int[Move.MAX_MOVES];
+        private SplittableRandom random;
+
+        @Override
+        public void newGame(long seed) {
+            random = new SplittableRandom(seed);
+        }
+
+        @Override
+        public int chooseMove(Checkers game) {
+            int n = game.generateMoves(moves);
+            return moves[random.nextInt(n)];
+        }
+    }
+
+    private static class EnginePlayer implements Player {
+        private static final long NO_TIME_LIMIT = 24 * 60 * 60 * 1000L;
+
+        private final TranspositionTable tt = new TranspositionTable(16,
+                TranspositionTable.Replacement.DEPTH_PREFERRED);
+        private final Engine engine = new Engine(tt);
+        private final int depth;
+        private final long millis;
+
+        EnginePlayer(int depth, long millis) {
+            if (depth < 1 || depth > Engine.MAX_PLY || millis < 0) {
+                throw new IllegalArgumentException();
+            }
+            this.depth = depth;
+            this.millis = millis == 0 ? NO_TIME_LIMIT : millis;
+        }
+
+        @Override
+        public void newGame(long seed) {
+            tt.clear(); //so a game does not depend on the one before
+        }
+
+        @Override
+        public int chooseMove(Checkers game) {
+            return engine.search(game, millis, depth).getMove();
+        }
+    }
+}
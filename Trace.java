@@ -0,0 +1,102 @@
+package org.cis1200.checkers;
+
+/**
+ * Debug tracing for the rules engine.
+ * <p>
+ * Call sites check {@link #isEnabled} before recording, so with no sink
+ * installed (the default) an event costs one field read and a compare and
+ * builds no strings. Install a sink with {@link #setSink}, for example a
+ * {@link RingBufferSink} to keep the last few thousand events in memory.
+ */
+public final class Trace {
+
+    public static final int OFF = 0;
+    public static final int ERROR = 1;
+    public static final int INFO = 2;
+    public static final int DEBUG = 3;
+
+    /** Legal moves were generated: a = player (1 or 2), b = number of moves. */
+    public static final int MOVES_GENERATED = 1;
+    /** A piece was selected: a = square, b = mask of squares it can move to. */
+    public static final int PIECE_SELECTED = 2;
+    /** Pieces were captured: a = move, b = mask of captured squares. */
+    public static final int CAPTURE = 3;
+    /** A move was played: a = move, b = black pieces << 32 | red pieces. */
+    public static final int MOVE_PLAYED = 4;
+    /** Saving failed: a and b unused. */
+    public static final int SAVE_FAILED = 5;
+    /** Loading failed: a and b unused. */
+    public static final int LOAD_FAILED = 6;
+    /** Writing the move journal failed: a and b unused. */
+    public static final int JOURNAL_FAILED = 7;
+    /** The move journal held a record that could not be replayed: a = game, b = offset. */
+    public static final int JOURNAL_TRUNCATED = 8;
+
+    private static volatile TraceSink sink;
+    private static volatile int level = OFF;
+
+    private Trace() {
+    }
+
+    /**
+     * Sends events up to and including level to sink. Pass null or OFF to
+     * turn tracing off.
+     */
+    public static void setSink(TraceSink newSink, int newLevel) {
+        sink = newSink;
+        level = newSink == null ? OFF : newLevel;
+    }
+
+    public static boolean isEnabled(int eventLevel) {
+        return eventLevel <= level;
+    }
+
+    /**
+     * Passes an event to the sink if its level is enabled.
+     */
+    public static void record(int eventLevel, int event, long a, long b) {
+        TraceSink s = sink;
+        if (s != null && eventLevel <= level) {
+            s.record(eventLevel, event, a, b);
+        }
+    }
+
+    /**
+     * Returns a readable description of an event.
+     */
+    public static String describe(int event, long a, long b) {
+        switch (event) {
+            case MOVES_GENERATED:
+                return "player " + a + " has " + b + " legal moves";
+            case PIECE_SELECTED:
+                return "selected (" + Bitboard.row((int) a) + ", " + Bitboard.col((int) a)
+                        + "), can move to " + squares((int) b);
+            case CAPTURE:
+                return Move.toString((int) a) + " captures " + squares((int) b);
+            case MOVE_PLAYED:
+                return "played " + Move.toString((int) a) + ", numBlack " + (b >>> 32)
+                        + " numWhite " + (int) b;
+            case SAVE_FAILED:
+                return "saving the game failed";
+            case LOAD_FAILED:
+                return "loading the game failed";
+            case JOURNAL_FAILED:
+                return "writing the move journal failed";
+            case JOURNAL_TRUNCATED:
+                return "move journal cut off at byte " + b + ", a bad record for game " + a;
+            default:
+                return "event " + event + " (" + a + ", " + b + ")";
+        }
+    }
+
+    private static String squares(int mask) {
+        StringBuilder sb = new StringBuilder();
+        for (int m = mask; m != 0; m &= m - 1) {
+            int s = Integer.numberOfTrailingZeros(m);
+            sb.append(sb.length() == 0 ? "" : " ")
+                    .append("(").append(Bitboard.row(s)).append(", ")
+                    .append(Bitboard.col(s)).append(")");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package org.cis1200.checkers;
+
+/**
+ * Receives the events recorded through {@link Trace}.
+ * <p>
+ * Events are passed as primitives so that recording one allocates
+ * nothing; {@link Trace#describe} turns an event into text when it is
+ * actually looked at.
+ */
+public interface TraceSink {
+
+    /**
+     * Records one event. Called from whatever thread produced it.
+     *
+     * @param level one of the Trace levels
+     * @param event one of the Trace event kinds
+     * @param a     first event argument, see the event kind
+     * @param b     second event argument, see the event kind
+     */
+    void record(int level, int event, long a, long b);
+}
@@ -0,0 +1,177 @@
+package org.cis1200.checkers;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * A fixed-size transposition table that any number of search threads can
+ * read and write at once without locking.
+ * <p>
+ * Entries live in one long array, two longs per entry: the position key
+ * XORed with the data, then the data itself. Depth, bound type, score and
+ * best move are all packed into the data long. If two threads write the
+ * same slot at once the halves of the entry can come from different
+ * writes, but then the key no longer XORs back to the one being probed and
+ * the entry simply misses. This is the lockless scheme from Hyatt and Mann.
+ * <p>
+ * Keys come from Zobrist, so {@link Checkers#getHash()} can be used
+ * directly.
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 1;
+    public static final int LOWER_BOUND = 2; // score is at least this much
+    public static final int UPPER_BOUND = 3; // score is at most this much
+
+    /** Returned by probe when there is no entry for the key. */
+    public static final long MISS = 0;
+
+    /**
+     * Decides whether a new entry may overwrite the one already in its
+     * slot.
+     */
+    public enum Replacement {
+        /** Always keep the newest entry. */
+        ALWAYS {
+            @Override
+            boolean replaces(long old, boolean sameKey, int depth, int generation) {
+                return true;
+            }
+        },
+        /**
+         * Keep the deeper entry, unless the old one is for the same
+         * position or was stored during an earlier search.
+         */
+        DEPTH_PREFERRED {
+            @Override
+            boolean replaces(long old, boolean sameKey, int depth, int generation) {
+                return old == MISS || sameKey || generation(old) != generation
+                        || depth >= depth(old);
+            }
+        };
+
+        abstract boolean replaces(long old, boolean sameKey, int depth, int generation);
+    }
+
+    // data layout, low to high: move (16 bits), score (16, signed),
+    // depth (8), bound (2), generation (8), and a bit that keeps every
+    // stored data value different from MISS
+    private static final int SCORE_SHIFT = 16;
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int GENERATION_SHIFT = 42;
+    private static final long VALID = 1L << 63;
+
+    // opaque accesses make every long read and write atomic without
+    // adding any fences
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] table;
+    private final int mask;
+    private final Replacement replacement;
+    private volatile int generation;
+
+    /**
+     * Creates a table with 2^log2Entries entries, each 16 bytes.
+     *
+     * @throws IllegalArgumentException if log2Entries is not between 1 and 29
+     */
+    public TranspositionTable(int log2Entries, Replacement replacement) {
+        if (log2Entries < 1 || log2Entries > 29) {
+            throw new IllegalArgumentException();
+        }
+        table = new long[2 << log2Entries];
+        mask = (1 << log2Entries) - 1;
+        this.replacement = replacement;
+    }
+
+    /**
+     * Returns the packed data stored for key, or MISS. Use the static
+     * accessors to unpack it.
+     */
+    public long probe(long key) {
+        int i = index(key);
+        long data = (long) SLOTS.getOpaque(table, i + 1);
+        long check = (long) SLOTS.getOpaque(table, i);
+        return data != MISS && (check ^ data) == key ? data : MISS;
+    }
+
+    public long probe(Checkers position) {
+        return probe(position.getHash());
+    }
+
+    /**
+     * Stores an entry for key if the replacement policy allows it.
+     *
+     * @param depth remaining search depth, 0 to 255
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param score score from the point of view of the side to move
+     * @param move  best move found, or 0
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        int i = index(key);
+        long old = (long) SLOTS.getOpaque(table, i + 1);
+        long oldKey = (long) SLOTS.getOpaque(table, i) ^ old;
+        int gen = generation;
+        if (!replacement.replaces(old, oldKey == key, depth, gen)) {
+            return;
+        }
+        long data = VALID
+                | (move & 0xFFFFL)
+                | (score & 0xFFFFL) << SCORE_SHIFT
+                | (long) (depth & 0xFF) << DEPTH_SHIFT
+                | (long) bound << BOUND_SHIFT
+                | (long) (gen & 0xFF) << GENERATION_SHIFT;
+        SLOTS.setOpaque(table, i, key ^ data);
+        SLOTS.setOpaque(table, i + 1, data);
+    }
+
+    public void store(Checkers position, int depth, int bound, int score, int move) {
+        store(position.getHash(), depth, bound, score, move);
+    }
+
+    /**
+     * Marks the start of a new search, so DEPTH_PREFERRED lets entries
+     * from earlier searches be replaced.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Empties the table. Not safe to call while a search is running.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+    }
+
+    /** Returns the number of entries in the table. */
+    public int size() {
+        return mask + 1;
+    }
+
+    private int index(long key) {
+        return ((int) key & mask) << 1;
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xFFFF);
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> SCORE_SHIFT);
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT & 0xFF);
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT & 3);
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> GENERATION_SHIFT & 0xFF);
+    }
+}
@@ -0,0 +1,214 @@
+package org.cis1200.checkers;
+
+/**
+ * The size of the board and the rules a game of Draughts is played by.
+ * <p>
+ * Squares are numbered as in Bitboard, only with size / 2 of them on each
+ * row: square s is on row s / (size / 2), and the dark squares are those
+ * where row + column is odd. The size is even and at most 10, so that one
+ * side's pieces always fit in the bits of a long; 12x12 boards, with 72
+ * squares, do not. Each variant keeps the shift masks and neighbour
+ * tables of its size, so the move generator never has to look at a cell.
+ * <p>
+ * Checkers is not a variant: its 8x8 game, with its own jump rules, has
+ * a model, search and tablebase built on int masks of its own.
+ */
+public final class Variant {
+
+    /** English draughts: 8x8, short kings, men only capture forwards. */
+    public static final Variant ENGLISH = new Variant("english", 8, false, false, false);
+
+    /**
+     * International draughts: 10x10, flying kings, men capture backwards
+     * too, and the capture that takes the most pieces must be played.
+     */
+    public static final Variant INTERNATIONAL =
+            new Variant("international", 10, true, true, true);
+
+    private final String name;
+    private final int size;
+    private final boolean flyingKings;
+    private final boolean menCaptureBackwards;
+    private final boolean maximumCapture;
+
+    // board geometry, one bit per dark square
+    private final int half; // squares on a row
+    private final int squares;
+    final long all;
+    final long evenRows;
+    final long oddRows;
+    final long leftEdge; // first dark square of each row
+    final long rightEdge; // last dark square of each row
+    final long topRow;
+    final long bottomRow;
+    // neighbor[d][s] is the square one step from s in direction d (as in
+    // Bitboard), or -1 off the board
+    final int[][] neighbor;
+
+    /**
+     * @param size                the number of rows and columns
+     * @param flyingKings         whether kings move and capture along a
+     *                            whole diagonal rather than one square
+     * @param menCaptureBackwards whether men may capture backwards
+     * @param maximumCapture      whether only the captures that take the
+     *                            most pieces are legal
+     * @throws IllegalArgumentException if size is odd or not between 4 and
+     *                                  10
+     */
+    public Variant(int size, boolean flyingKings, boolean menCaptureBackwards,
+                   boolean maximumCapture) {
+        this(size + "x" + size, size, flyingKings, menCaptureBackwards, maximumCapture);
+    }
+
+    private Variant(String name, int size, boolean flyingKings, boolean menCaptureBackwards,
+                    boolean maximumCapture) {
+        if (size < 4 || size > 10 || size % 2 != 0) {
+            throw new IllegalArgumentException();
+        }
+        this.name = name;
+        this.size = size;
+        this.flyingKings = flyingKings;
+        this.menCaptureBackwards = menCaptureBackwards;
+        this.maximumCapture = maximumCapture;
+
+        half = size / 2;
+        squares = size * half;
+        all = -1L >>> (64 - squares);
+        long even = 0;
+        long left = 0;
+        long right = 0;
+        for (int r = 0; r < size; r++) {
+            long row = ((1L << half) - 1) << (r * half);
+            if (r % 2 == 0) {
+                even |= row;
+            }
+            left |= 1L << (r * half);
+            right |= 1L << (r * half + half - 1);
+        }
+        evenRows = even;
+        oddRows = all & ~even;
+        leftEdge = left;
+        rightEdge = right;
+        topRow = (1L << half) - 1;
+        bottomRow = topRow << (squares - half);
+
+        int[] dr = {-1, -1, 1, 1};
+        int[] dc = {-1, 1, -1, 1};
+        neighbor = new int[4][squares];
+        for (int d = 0; d < 4; d++) {
+            for (int s = 0; s < squares; s++) {
+                neighbor[d][s] = square(row(s) + dr[d], col(s) + dc[d]);
+            }
+        }
+    }
+
+    /**
+     * Returns the named variant: english, international, or a size
+     * followed by any of the letters f (flying kings), b (men capture
+     * backwards) and m (maximum capture), such as "10fbm".
+     *
+     * @throws IllegalArgumentException if there is no such variant
+     */
+    public static Variant forName(String name) {
+        switch (name) {
+            case "english":
+                return ENGLISH;
+            case "international":
+                return INTERNATIONAL;
+            default:
+                int digits = 0;
+                while (digits < name.length() && Character.isDigit(name.charAt(digits))) {
+                    digits++;
+                }
+                String rules = name.substring(digits);
+                if (digits == 0 || digits > 2 || !rules.matches("f?b?m?")) {
+                    throw new IllegalArgumentException(name);
+                }
+                return new Variant(Integer.parseInt(name.substring(0, digits)),
+                        rules.contains("f"), rules.contains("b"), rules.contains("m"));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of dark squares, which is the number of bits used
+     * in a mask.
+     */
+    public int getSquares() {
+        return squares;
+    }
+
+    public boolean hasFlyingKings() {
+        return flyingKings;
+    }
+
+    public boolean menCaptureBackwards() {
+        return menCaptureBackwards;
+    }
+
+    public boolean hasMaximumCapture() {
+        return maximumCapture;
+    }
+
+    /**
+     * Returns the squares of the men each side starts with: every dark
+     * square of the size / 2 - 1 rows nearest to it. Red's are the top
+     * rows.
+     */
+    public long initialRed() {
+        return (1L << (half * (half - 1))) - 1;
+    }
+
+    public long initialBlack() {
+        return initialRed() << (squares - half * (half - 1));
+    }
+
+    /**
+     * Returns the square index of (r, c), or -1 if it is off the board or
+     * a light square.
+     */
+    public int square(int r, int c) {
+        if (r < 0 || r >= size || c < 0 || c >= size || (r + c) % 2 == 0) {
+            return -1;
+        }
+        return r * half + c / 2;
+    }
+
+    public int row(int s) {
+        return s / half;
+    }
+
+    public int col(int s) {
+        return 2 * (s % half) + 1 - (row(s) & 1);
+    }
+
+    // One diagonal step for every piece in p at once, as in Bitboard.
+
+    long upLeft(long p) {
+        return ((p & evenRows) >>> half) | ((p & oddRows & ~leftEdge) >>> (half + 1));
+    }
+
+    long upRight(long p) {
+        return ((p & evenRows & ~rightEdge) >>> (half - 1)) | ((p & oddRows) >>> half);
+    }
+
+    long downLeft(long p) {
+        return (((p & evenRows) << half) | ((p & oddRows & ~leftEdge) << (half - 1))) & all;
+    }
+
+    long downRight(long p) {
+        return (((p & evenRows & ~rightEdge) << (half + 1)) | ((p & oddRows) << half)) & all;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,63 @@
+package org.cis1200.checkers;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys for Checkers positions.
+ * <p>
+ * Every (piece, square) pair gets a fixed random 64-bit number and the key
+ * of a position is the XOR of the numbers of its pieces, XORed with one
+ * more number when red is to move. Adding or removing a piece is then a
+ * single XOR, so Checkers keeps its key up to date as the game goes on.
+ * The numbers come from a fixed seed, so keys are the same in every run
+ * and can be stored.
+ */
+public final class Zobrist {
+
+    // PIECES[player][s] for the player codes used by Checkers.getPlayer;
+    // row 0 (an empty square) is all zeros so it can be XORed in freely
+    private static final long[][] PIECES = new long[5][32];
+    private static final long RED_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EEDC4EC4E55L);
+        for (int p = 1; p < 5; p++) {
+            for (int s = 0; s < 32; s++) {
+                PIECES[p][s] = random.nextLong();
+            }
+        }
+        RED_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Returns the key of a player code (0 to 4, as in Checkers.getPlayer)
+     * on square s.
+     */
+    public static long piece(int player, int s) {
+        return PIECES[player][s];
+    }
+
+    /** Returns the key that is XORed in when red is to move. */
+    public static long side() {
+        return RED_TO_MOVE;
+    }
+
+    /**
+     * Computes the key of a position from scratch.
+     */
+    public static long hash(int black, int red, int kings, boolean blackToMove) {
+        long h = blackToMove ? 0 : RED_TO_MOVE;
+        for (int b = black; b != 0; b &= b - 1) {
+            int s = Integer.numberOfTrailingZeros(b);
+            h ^= PIECES[(kings >>> s & 1) != 0 ? 3 : 1][s];
+        }
+        for (int b = red; b != 0; b &= b - 1) {
+            int s = Integer.numberOfTrailingZeros(b);
+            h ^= PIECES[(kings >>> s & 1) != 0 ? 4 : 2][s];
+        }
+        return h;
+    }
+}